@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Writes the files of a commit as a tar or zip archive. Contents are
+ *  streamed from the blob store one file at a time, so memory use does not
+ *  grow with the size of the files.
+ *  @author Anh Le & Roberto Romo
+ */
+class Archive {
+
+    /** Not instantiable. */
+    private Archive() {
+    }
+
+    /** Writes FILES, whose contents are in STORE, to OUT as a POSIX tar
+     * archive whose entries are dated MTIME. Paths too long for a tar
+     * header are recorded in pax extended headers.
+     * @param files The blob map of a commit.
+     * @param store The store holding the blobs.
+     * @param mtime Modification time, in seconds since the epoch.
+     * @param out Destination of the archive.
+     */
+    static void tar(Map<String, ObjectId> files, ObjectStore store,
+                    long mtime, OutputStream out) throws IOException {
+        for (Map.Entry<String, ObjectId> e
+                 : new TreeMap<>(files).entrySet()) {
+            String path = e.getKey();
+            long size = store.size(e.getValue());
+            byte[] name = path.getBytes(StandardCharsets.UTF_8);
+            int split = split(name);
+            if (split == -2) {
+                byte[] record = paxRecord("path", path);
+                out.write(header("././@PaxHeader".getBytes(), -1,
+                                 record.length, mtime, (byte) 'x'));
+                out.write(record);
+                pad(record.length, out);
+                split = -1;
+            }
+            out.write(header(name, split, size, mtime, (byte) '0'));
+            store.writeTo(e.getValue(), out);
+            pad(size, out);
+        }
+        out.write(new byte[2 * BLOCK]);
+    }
+
+    /** Writes FILES, whose contents are in STORE, to OUT as a zip archive
+     * whose entries are dated MTIME.
+     * @param files The blob map of a commit.
+     * @param store The store holding the blobs.
+     * @param mtime Modification time, in seconds since the epoch.
+     * @param out Destination of the archive.
+     */
+    static void zip(Map<String, ObjectId> files, ObjectStore store,
+                    long mtime, OutputStream out) throws IOException {
+        ZipOutputStream zip =
+            new ZipOutputStream(out, StandardCharsets.UTF_8);
+        for (Map.Entry<String, ObjectId> e
+                 : new TreeMap<>(files).entrySet()) {
+            ZipEntry entry = new ZipEntry(e.getKey());
+            entry.setTime(mtime * 1000);
+            zip.putNextEntry(entry);
+            store.writeTo(e.getValue(), zip);
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    /** Returns the index of the slash at which NAME must be split into a
+     * tar header's prefix and name fields, -1 if it fits in the name field
+     * alone, or -2 if it cannot be split to fit. */
+    private static int split(byte[] name) {
+        if (name.length <= NAME) {
+            return -1;
+        }
+        for (int i = Math.min(name.length - 1, PREFIX); i > 0; i -= 1) {
+            if (name[i] == '/' && name.length - i - 1 <= NAME) {
+                return i;
+            }
+        }
+        return -2;
+    }
+
+    /** Returns a ustar header block for the entry NAME, split into prefix
+     * and name at index SPLIT if it is not negative, holding SIZE bytes
+     * dated MTIME, of type TYPE. */
+    private static byte[] header(byte[] name, int split, long size,
+                                 long mtime, byte type) {
+        byte[] block = new byte[BLOCK];
+        if (split >= 0) {
+            System.arraycopy(name, 0, block, PREFIX_OFFSET, split);
+            System.arraycopy(name, split + 1, block, 0,
+                             name.length - split - 1);
+        } else {
+            System.arraycopy(name, 0, block, 0, Math.min(name.length, NAME));
+        }
+        octal(block, 100, 8, 0644);
+        octal(block, 108, 8, 0);
+        octal(block, 116, 8, 0);
+        octal(block, 124, 12, size);
+        octal(block, 136, 12, mtime);
+        block[156] = type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII),
+                         0, block, 257, 8);
+        Arrays.fill(block, 148, 156, (byte) ' ');
+        long sum = 0;
+        for (byte b : block) {
+            sum += b & 0xff;
+        }
+        octal(block, 148, 7, sum);
+        return block;
+    }
+
+    /** Writes VALUE into BLOCK[START .. START+LEN) as zero-padded octal
+     * digits followed by a NUL. */
+    private static void octal(byte[] block, int start, int len, long value) {
+        String digits = Long.toOctalString(value);
+        int width = len - 1;
+        for (int i = 0; i < width; i += 1) {
+            int d = i - (width - digits.length());
+            block[start + i] = d < 0 ? (byte) '0' : (byte) digits.charAt(d);
+        }
+        block[start + width] = 0;
+    }
+
+    /** Returns the pax extended header record setting KEY to VALUE. */
+    private static byte[] paxRecord(String key, String value) {
+        String body = " " + key + "=" + value + "\n";
+        int len = body.getBytes(StandardCharsets.UTF_8).length;
+        int digits = Integer.toString(len).length();
+        int total = len + digits;
+        if (Integer.toString(total).length() > digits) {
+            total += 1;
+        }
+        return (total + body).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Writes to OUT the zeros that round SIZE bytes up to whole blocks. */
+    private static void pad(long size, OutputStream out) throws IOException {
+        int rem = (int) (size % BLOCK);
+        if (rem != 0) {
+            out.write(new byte[BLOCK - rem]);
+        }
+    }
+
+    /** Size of a tar block. */
+    private static final int BLOCK = 512;
+
+    /** Width of the tar name field. */
+    private static final int NAME = 100;
+
+    /** Width of the ustar prefix field. */
+    private static final int PREFIX = 155;
+
+    /** Offset of the ustar prefix field. */
+    private static final int PREFIX_OFFSET = 345;
+}
@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/** The state of a bisection: the branch it started from, the commit known
+ *  to be bad and those known to be good or to be untestable. It is kept in
+ *  a small text file, one fact per line, which exists only while a
+ *  bisection is under way.
+ *
+ *  Since commits have a single parent, the commits that may have brought
+ *  in the bad change are the chain of parents from the bad commit down to
+ *  the first commit that is good or an ancestor of a good one. Testing the
+ *  middle of that chain halves it, so a chain of n commits takes about
+ *  log2(n) steps.
+ *  @author Anh Le & Roberto Romo
+ */
+class Bisect {
+
+    /** The bisection whose state is kept in FILE.
+     * @param file The state file, which exists iff a bisection has been
+     * started.
+     */
+    Bisect(File file) {
+        _file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        String text = new String(Utils.readContents(file),
+                                 StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            String[] fields = line.split(" ", 2);
+            if (fields.length < 2) {
+                continue;
+            } else if (fields[0].equals("branch")) {
+                _branch = fields[1];
+            } else {
+                mark(fields[0], ObjectId.parse(fields[1]));
+            }
+        }
+    }
+
+    /** Returns true iff a bisection is under way. */
+    boolean active() {
+        return _branch != null;
+    }
+
+    /** Starts a bisection from BRANCH, forgetting any earlier one.
+     * @param branch The current branch, to which bisect reset returns.
+     */
+    void start(String branch) {
+        _branch = branch;
+        _bad = null;
+        _good.clear();
+        _skipped.clear();
+    }
+
+    /** Returns the branch that the bisection started from. */
+    String branch() {
+        return _branch;
+    }
+
+    /** Returns the commit known to be bad, or null if none is. */
+    ObjectId bad() {
+        return _bad;
+    }
+
+    /** Returns true iff at least one commit is known to be good. */
+    boolean hasGood() {
+        return !_good.isEmpty();
+    }
+
+    /** Records that commit ID is TERM: good, bad or skip. A later bad
+     * commit replaces an earlier one.
+     * @param term One of good, bad and skip.
+     * @param id A commit id.
+     */
+    void mark(String term, ObjectId id) {
+        if (id == null) {
+            return;
+        }
+        switch (term) {
+        case "bad":
+            _bad = id;
+            break;
+        case "good":
+            _good.add(id);
+            break;
+        case "skip":
+            _skipped.add(id);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /** Returns true iff commit ID has been skipped.
+     * @param id A commit id.
+     */
+    boolean skipped(ObjectId id) {
+        return _skipped.contains(id);
+    }
+
+    /** Returns the commits that may be the first bad one, the bad commit
+     * first and then its ancestors in order, stopping at the first that
+     * is good or an ancestor of a good commit.
+     * @param commits Finds a commit by id.
+     */
+    List<Commit> candidates(Function<ObjectId, Commit> commits) {
+        Set<ObjectId> good = new HashSet<>();
+        for (ObjectId id : _good) {
+            for (Commit c = commits.apply(id); c != null && good.add(c.sha());
+                 c = parent(c, commits)) {
+                continue;
+            }
+        }
+        List<Commit> result = new ArrayList<>();
+        for (Commit c = commits.apply(_bad); c != null
+                 && !good.contains(c.sha()); c = parent(c, commits)) {
+            result.add(c);
+        }
+        return result;
+    }
+
+    /** Returns the index in CANDIDATES, as returned by candidates, of the
+     * commit to test next: the one nearest the middle that has not been
+     * skipped, or -1 if the first bad commit is already known or only
+     * skipped commits are left.
+     * @param candidates The commits that may be the first bad one.
+     */
+    int next(List<Commit> candidates) {
+        int n = candidates.size();
+        for (int d = 0; d <= n / 2; d += 1) {
+            for (int i : new int[] { n / 2 - d, n / 2 + d }) {
+                if (i >= 1 && i < n
+                        && !_skipped.contains(candidates.get(i).sha())) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Writes the state to its file. */
+    void save() {
+        StringBuilder text = new StringBuilder();
+        text.append("branch ").append(_branch).append('\n');
+        if (_bad != null) {
+            text.append("bad ").append(_bad).append('\n');
+        }
+        for (ObjectId id : _good) {
+            text.append("good ").append(id).append('\n');
+        }
+        for (ObjectId id : _skipped) {
+            text.append("skip ").append(id).append('\n');
+        }
+        _file.getParentFile().mkdirs();
+        Utils.writeContents(_file,
+                            text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Ends the bisection, removing its file. */
+    void clear() {
+        _file.delete();
+        _branch = null;
+    }
+
+    /** Returns the parent of C, or null if C is the initial commit. */
+    private static Commit parent(Commit c, Function<ObjectId, Commit> commits) {
+        return c.psha() == null ? null : commits.apply(c.psha());
+    }
+
+    /** The state file. */
+    private final File _file;
+
+    /** The branch the bisection started from, or null if there is none. */
+    private String _branch;
+
+    /** The commit known to be bad. */
+    private ObjectId _bad;
+
+    /** Commits known to be good. */
+    private final Set<ObjectId> _good = new LinkedHashSet<>();
+
+    /** Commits that cannot be tested. */
+    private final Set<ObjectId> _skipped = new LinkedHashSet<>();
+}
@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/** Line attribution for one file. The line matching between two versions
+ *  of a file depends only on the two blobs, so it is cached on disk per
+ *  pair of blob ids and reused by every later blame that crosses the
+ *  same pair.
+ *  @author Anh Le & Roberto Romo
+ */
+class Blame {
+
+    /** A blamer reading blobs from STORE and caching line matchings in
+     * CACHEDIR.
+     * @param store The store holding the blobs.
+     * @param cacheDir Directory of cached matchings.
+     */
+    Blame(ObjectStore store, File cacheDir) {
+        _store = store;
+        _cacheDir = cacheDir;
+    }
+
+    /** Returns, for each line of the version of PATH in HISTORY[0], the
+     * index in HISTORY of the commit that introduced the line.
+     * @param history The commits that changed PATH, newest first, as
+     * found through Commit.lastChange. HISTORY[0] must track PATH.
+     * @param path Name of the file.
+     */
+    int[] annotate(List<Commit> history, String path) {
+        ObjectId blob = history.get(0).files().get(path);
+        int n = Diff.lines(_store.get(blob)).length;
+        int[] owner = new int[n];
+        int[] pos = new int[n];
+        Arrays.fill(owner, -1);
+        for (int j = 0; j < n; j += 1) {
+            pos[j] = j;
+        }
+        int left = n;
+        for (int i = 0; left > 0; i += 1) {
+            ObjectId older = i + 1 < history.size()
+                ? history.get(i + 1).files().get(path) : null;
+            int[] map = older == null ? null : mapping(older, blob);
+            for (int j = 0; j < n; j += 1) {
+                if (owner[j] >= 0) {
+                    continue;
+                } else if (map == null || map[pos[j]] < 0) {
+                    owner[j] = i;
+                    left -= 1;
+                } else {
+                    pos[j] = map[pos[j]];
+                }
+            }
+            blob = older;
+        }
+        return owner;
+    }
+
+    /** Returns the line matching from blob OLDER to blob NEWER, as computed
+     * by Diff.match, reading it from the cache when possible.
+     * @param older The earlier version.
+     * @param newer The later version.
+     */
+    int[] mapping(ObjectId older, ObjectId newer) {
+        File cached = new File(_cacheDir, older.toString() + newer);
+        if (cached.isFile()) {
+            try (DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(new FileInputStream(cached)))) {
+                int[] result = new int[in.readInt()];
+                for (int i = 0; i < result.length; i += 1) {
+                    result[i] = in.readInt();
+                }
+                return result;
+            } catch (IOException excp) {
+                cached.delete();
+            }
+        }
+        int[] result = Diff.match(Diff.lines(_store.get(older)),
+                                  Diff.lines(_store.get(newer)));
+        _cacheDir.mkdirs();
+        File tmp = new File(_cacheDir, cached.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(result.length);
+            for (int m : result) {
+                out.writeInt(m);
+            }
+        } catch (IOException excp) {
+            return result;
+        }
+        try {
+            Files.move(tmp.toPath(), cached.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+        }
+        return result;
+    }
+
+    /** Source of blob contents. */
+    private final ObjectStore _store;
+
+    /** Directory of cached matchings. */
+    private final File _cacheDir;
+}
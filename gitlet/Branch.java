@@ -1,7 +1,6 @@
 package gitlet;
 
 import java.io.Serializable;
-import java.util.Map;
 import java.io.File;
 
 /** Driver class for Branch.
@@ -28,13 +27,16 @@ public class Branch implements Serializable {
         return _name;
     }
 
-    /** Returns file FILE in branch. */
-    public File getFile(String file) {
-        return new File(branchFiles().get(file) + "/" + file);
+    /** Returns the stored copy of file FILE in branch.
+     * @param store The store holding the branch's blobs.
+     * @param file Name of a file tracked by the branch.
+     */
+    public File getFile(ObjectStore store, String file) {
+        return store.file(branchFiles().get(file));
     }
 
     /** Returns the Branch's files. */
-    public Map<String, String> branchFiles() {
+    public PathMap<ObjectId> branchFiles() {
         return _commit.files();
     }
 
@@ -1,139 +1,123 @@
 package gitlet;
 
 import java.io.Serializable;
-import java.util.Map;
-import java.util.HashMap;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
 
 /** Driver class for Commit.
  *  @author Anh Le & Roberto Romo
  */
 public class Commit implements Serializable {
 
-    /** Commit Constructor.
+    /** Commit Constructor. The commit's SHA-1 is computed from its message,
+     * parent, time and the tree hash of BLOBS, whose blobs were stored
+     * when they were staged, so no working file is read. The trie nodes
+     * of BLOBS that did not change are shared with the parent commit.
      * @param message The commit message.
-     * @param pHash SHA-1 for the parent.
-     * @param sHash SHA-1 for the commit.
-     * @param blobs Stored files of this commit.
+     * @param parent The parent commit, or null if there is none.
+     * @param blobs Ids of the stored contents of this commit's files.
+     * @param changed Files that may differ from the parent's: the staged
+     * and removed files.
      * @param time Time the commit was made.
      */
-    public Commit(String message, String pHash, String sHash,
-                  Map<String, String> blobs, String time) {
-        _blobs.putAll(blobs);
+    public Commit(String message, Commit parent, PathMap<ObjectId> blobs,
+                  Collection<String> changed, String time) {
         _msg = message;
-        _pHash = pHash;
-        _sHash = sHash;
+        _pHash = parent == null ? null : parent.sha();
         _commTime = time;
-        _dir = ".gitlet/" + _sHash;
-
-        try {
-            makeDir(_dir);
-        } catch (IOException excp) {
-            excp.printStackTrace();
+        _blobs = blobs;
+        _tree = blobs.treeHash();
+        _sHash = hash(message, _pHash, time, _tree);
+        PathMap<ObjectId> before = parent == null ? PathMap.empty()
+            : parent.files();
+        _changes = parent == null ? PathMap.empty() : parent._changes;
+        for (String file : changed) {
+            if (!Objects.equals(before.get(file), blobs.get(file))) {
+                _changes = _changes.plus(file, _sHash);
+            }
         }
     }
 
-
     /** Initial Commit Constructor with no previous blobs.
      * @param message The initial commit message.
-     * @param pHash SHA-1 for the parent.
-     * @param sHash SHA-1 for the commit.
      * @param time Time the commit was made.
      */
-    public Commit(String message, String pHash, String sHash, String time) {
-        _msg = message;
-        _pHash = pHash;
-        _sHash = sHash;
-        _commTime = time;
-        _dir = null;
+    public Commit(String message, String time) {
+        this(message, null, PathMap.empty(), Collections.emptySet(), time);
     }
 
-    /** Copy a file source to file dest, adapted from
-     * http://www.journaldev.com/861/4-ways-to-copy-file-in-java.
-     * @param source The source of the file to be copied.
-     * @param dest The destination of the copied file.
+    /** Returns the SHA-1 of a commit.
+     * @param message The commit message.
+     * @param pHash SHA-1 for the parent, or null if there is none.
+     * @param time Time the commit was made.
+     * @param tree Tree hash of the commit's files.
      */
-    public void copyFile(File source, File dest) throws IOException {
-        if (!source.exists()) {
-            return;
-        }
-        File destination = dest.getParentFile();
-        if (destination != null && !destination.exists()) {
-            destination.mkdirs();
-        }
-        Files.copy(source.toPath(), dest.toPath(),
-                StandardCopyOption.REPLACE_EXISTING);
+    static ObjectId hash(String message, ObjectId pHash, String time,
+                         ObjectId tree) {
+        return ObjectId.hash(message, pHash == null ? "0" : pHash.toString(),
+                             time, tree.toString());
     }
 
-    /** Assigns directories to the blobs.
-     * @param direc Directory of the commit.
+    /** Returns true iff this commit's SHA-1 and tree hash agree with its
+     * message, parent, time and files.
+     * @param verified Trie nodes already verified, as for
+     * PathMap.verifyTree.
      */
-    private void makeDir(String direc) throws IOException {
-        for (String f : _blobs.keySet()) {
-            File source = new File(f);
-            File dest = new File(direc + "/" + f);
-
-            if (dest.getParentFile() != null) {
-                dest.getParentFile().mkdirs();
-            }
-            Files.copy(source.toPath(), dest.toPath(),
-                    StandardCopyOption.REPLACE_EXISTING);
-            _blobs.put(f, direc);
-        }
+    public boolean verify(Set<Object> verified) {
+        return _blobs.verifyTree(verified) && _tree.equals(_blobs.treeHash())
+            && _sHash.equals(hash(_msg, _pHash, _commTime, _tree));
     }
 
-    /** Replaces files in working directory with blobs. */
-    public void restore() {
+    /** Replaces files in working directory with blobs.
+     * @param store The store holding this commit's blobs.
+     */
+    public void restore(ObjectStore store) {
         for (String file: files().keySet()) {
-            File dest = new File(file);
-            File source = new File(files().get(file) + "/" + file);
-            try {
-                copyFile(source, dest);
-            } catch (IOException excp) {
-                excp.printStackTrace();
-            }
+            store.copyTo(files().get(file), new File(file));
         }
-
     }
 
     /** Replaces a file in working directory with blob.
+     * @param store The store holding this commit's blobs.
      * @param fileName Name of the tracked file to be restored back
      * to working directory.
      */
-    public void restoreFile(String fileName) {
-        for (String file: files().keySet()) {
-            if (fileName.equals(file)) {
-                File dest = new File(file);
-                File source = new File(files().get(file) + "/" + file);
-                try {
-                    copyFile(source, dest);
-                } catch (IOException excp) {
-                    excp.printStackTrace();
-                }
-            }
+    public void restoreFile(ObjectStore store, String fileName) {
+        ObjectId id = files().get(fileName);
+        if (id != null) {
+            store.copyTo(id, new File(fileName));
         }
     }
 
     /** Returns stored files. */
-    public Map<String, String> files() {
+    public PathMap<ObjectId> files() {
         return _blobs;
     }
 
-    /** Return the directory of this commit. */
-    public String directory() {
-        return _dir;
+    /** Returns the SHA of the latest commit, up to and including this one,
+     * that added, changed or removed FILE, or null if there is none.
+     * @param file Name of a file.
+     */
+    public ObjectId lastChange(String file) {
+        return _changes.get(file);
+    }
+
+    /** Returns the tree hash of this commit's files. */
+    public ObjectId tree() {
+        return _tree;
     }
 
     /** Returns the SHA of this commit. */
-    public String sha() {
+    public ObjectId sha() {
         return _sHash;
     }
 
-    /** Returns the SHA of this commit's parent. */
-    public String psha() {
+    /** Returns the SHA of this commit's parent, or null for the initial
+     * commit. */
+    public ObjectId psha() {
         return _pHash;
     }
 
@@ -147,9 +131,6 @@ public class Commit implements Serializable {
         return _msg;
     }
 
-    /** Directory of commit. */
-    private String _dir;
-
     /** Commit date. */
     private String _commTime;
 
@@ -157,11 +138,19 @@ public class Commit implements Serializable {
     private String _msg;
 
     /** SHA-1 for the commit. */
-    private String _sHash;
+    private ObjectId _sHash;
 
     /** SHA-1 for the parent. */
-    private String _pHash;
+    private ObjectId _pHash;
+
+    /** Tree hash of _blobs. */
+    private ObjectId _tree;
+
+    /** Path history index: the id of the latest commit, in this commit's
+     * history, that changed each path. It shares unchanged trie nodes
+     * with the parent's index. */
+    private PathMap<ObjectId> _changes;
 
-    /** Blob references. */
-    private Map<String, String> _blobs = new HashMap<>();
+    /** Blob references: the id of each tracked file's contents. */
+    private PathMap<ObjectId> _blobs = PathMap.empty();
 }
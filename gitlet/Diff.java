@@ -0,0 +1,317 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Line-by-line comparison of file contents, using Myers' O(ND)
+ *  difference algorithm after stripping the common prefix and suffix.
+ *  @author Anh Le & Roberto Romo
+ */
+class Diff {
+
+    /** Not instantiable. */
+    private Diff() {
+    }
+
+    /** Returns the lines of CONTENTS, without their line terminators. A
+     * final line terminator does not start another line.
+     * @param contents The contents of a file.
+     */
+    static String[] lines(byte[] contents) {
+        String text = new String(contents, StandardCharsets.UTF_8);
+        if (text.isEmpty()) {
+            return new String[0];
+        }
+        if (text.endsWith("\n")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return text.split("\n", -1);
+    }
+
+    /** Returns an array that maps each line of B to the line of A that it
+     * matches in a longest common subsequence of A and B, or to -1 if the
+     * line of B was inserted.
+     * @param a The old lines.
+     * @param b The new lines.
+     */
+    static int[] match(String[] a, String[] b) {
+        int[] result = new int[b.length];
+        Arrays.fill(result, -1);
+        int pre = 0;
+        while (pre < a.length && pre < b.length && a[pre].equals(b[pre])) {
+            result[pre] = pre;
+            pre += 1;
+        }
+        int suf = 0;
+        while (suf < a.length - pre && suf < b.length - pre
+               && a[a.length - 1 - suf].equals(b[b.length - 1 - suf])) {
+            result[b.length - 1 - suf] = a.length - 1 - suf;
+            suf += 1;
+        }
+        myers(a, pre, a.length - suf, b, pre, b.length - suf, result);
+        return result;
+    }
+
+    /** Returns a unified diff, with three lines of context, from A to B,
+     * the old and new contents of the file PATH. A null content means the
+     * file does not exist on that side.
+     * @param path Name of the file.
+     * @param a The old contents, or null.
+     * @param b The new contents, or null.
+     */
+    static String unified(String path, byte[] a, byte[] b) {
+        String header = a == null ? "new file\n"
+            : b == null ? "deleted file\n" : "";
+        return unified(path, path, header, a, b);
+    }
+
+    /** Returns a unified diff, as by unified, from A, the contents of the
+     * file FROM, to B, the contents of the file TO that was renamed or, if
+     * COPY, copied from it with SCORE percent similarity.
+     * @param from Name of the old file.
+     * @param to Name of the new file.
+     * @param score Percent similarity of the two.
+     * @param copy True iff FROM remains.
+     * @param a The old contents.
+     * @param b The new contents.
+     */
+    static String renamed(String from, String to, int score, boolean copy,
+                          byte[] a, byte[] b) {
+        String kind = copy ? "copy" : "rename";
+        return unified(from, to, "similarity index " + score + "%\n"
+                       + kind + " from " + from + "\n"
+                       + kind + " to " + to + "\n", a, b);
+    }
+
+    /** Returns a unified diff from A, the contents of the file APATH, to
+     * B, the contents of the file BPATH, with the extended header lines
+     * HEADER. Identical contents have no hunks. */
+    private static String unified(String aPath, String bPath, String header,
+                                  byte[] a, byte[] b) {
+        StringBuilder out = new StringBuilder();
+        out.append("diff --git a/").append(aPath).append(" b/").append(bPath)
+            .append("\n").append(header);
+        if (a != null && b != null && Arrays.equals(a, b)) {
+            return out.toString();
+        }
+        if (isBinary(a) || isBinary(b)) {
+            out.append("Binary files ").append(a == null ? NULL : "a/" + aPath)
+                .append(" and ").append(b == null ? NULL : "b/" + bPath)
+                .append(" differ\n");
+            return out.toString();
+        }
+        out.append("--- ").append(a == null ? NULL : "a/" + aPath)
+            .append("\n");
+        out.append("+++ ").append(b == null ? NULL : "b/" + bPath)
+            .append("\n");
+        String[] x = a == null ? new String[0] : lines(a);
+        String[] y = b == null ? new String[0] : lines(b);
+        List<int[]> ops = edits(x, y);
+        int k = 0;
+        while (k < ops.size()) {
+            if (ops.get(k)[0] == EQUAL) {
+                k += 1;
+                continue;
+            }
+            int start = Math.max(0, k - CONTEXT);
+            int end = k;
+            for (int last = k; end < ops.size()
+                     && end - last <= 2 * CONTEXT + 1; end += 1) {
+                if (ops.get(end)[0] != EQUAL) {
+                    last = end;
+                }
+            }
+            int last = end - 1;
+            while (ops.get(last)[0] == EQUAL) {
+                last -= 1;
+            }
+            end = Math.min(ops.size(), last + 1 + CONTEXT);
+            hunk(ops.subList(start, end), x, y, out);
+            k = end;
+        }
+        return out.toString();
+    }
+
+    /** Returns the numbers of lines inserted and deleted going from A to
+     * B, the old and new contents of a file, either of which may be
+     * null. Binary files count as no lines.
+     * @param a The old contents, or null.
+     * @param b The new contents, or null.
+     */
+    static int[] stat(byte[] a, byte[] b) {
+        int[] result = new int[2];
+        if (isBinary(a) || isBinary(b)) {
+            return result;
+        }
+        String[] x = a == null ? new String[0] : lines(a);
+        String[] y = b == null ? new String[0] : lines(b);
+        int common = 0;
+        for (int m : match(x, y)) {
+            if (m >= 0) {
+                common += 1;
+            }
+        }
+        result[0] = y.length - common;
+        result[1] = x.length - common;
+        return result;
+    }
+
+    /** Returns true iff CONTENTS is non-null and contains a NUL byte.
+     * @param contents File contents, or null.
+     */
+    static boolean isBinary(byte[] contents) {
+        if (contents == null) {
+            return false;
+        }
+        for (byte c : contents) {
+            if (c == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the edit script from X to Y as a list of {OP, I, J}
+     * triples, where OP is EQUAL, DELETE or INSERT, and I and J are the
+     * current positions in X and Y.
+     * @param x The old lines.
+     * @param y The new lines.
+     */
+    static List<int[]> edits(String[] x, String[] y) {
+        int[] m = match(x, y);
+        boolean[] kept = new boolean[x.length];
+        for (int j : m) {
+            if (j >= 0) {
+                kept[j] = true;
+            }
+        }
+        List<int[]> ops = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < x.length || j < y.length) {
+            if (i < x.length && !kept[i]) {
+                ops.add(new int[] {DELETE, i, j});
+                i += 1;
+            } else if (j < y.length && m[j] < 0) {
+                ops.add(new int[] {INSERT, i, j});
+                j += 1;
+            } else {
+                ops.add(new int[] {EQUAL, i, j});
+                i += 1;
+                j += 1;
+            }
+        }
+        return ops;
+    }
+
+    /** Appends to OUT the hunk made of the edits OPS from X to Y. */
+    private static void hunk(List<int[]> ops, String[] x, String[] y,
+                             StringBuilder out) {
+        int oldLen = 0, newLen = 0;
+        for (int[] op : ops) {
+            oldLen += op[0] == INSERT ? 0 : 1;
+            newLen += op[0] == DELETE ? 0 : 1;
+        }
+        int oldStart = ops.get(0)[1] + (oldLen == 0 ? 0 : 1);
+        int newStart = ops.get(0)[2] + (newLen == 0 ? 0 : 1);
+        out.append("@@ -").append(oldStart).append(",").append(oldLen)
+            .append(" +").append(newStart).append(",").append(newLen)
+            .append(" @@\n");
+        for (int[] op : ops) {
+            if (op[0] == EQUAL) {
+                out.append(" ").append(x[op[1]]);
+            } else if (op[0] == DELETE) {
+                out.append("-").append(x[op[1]]);
+            } else {
+                out.append("+").append(y[op[2]]);
+            }
+            out.append("\n");
+        }
+    }
+
+    /** Records in RESULT the matches of a shortest edit script from
+     * A[A0 .. A1) to B[B0 .. B1).
+     * @param a The old lines.
+     * @param a0 First old line compared.
+     * @param a1 End of the old lines compared.
+     * @param b The new lines.
+     * @param b0 First new line compared.
+     * @param b1 End of the new lines compared.
+     * @param result Maps lines of B to lines of A.
+     */
+    private static void myers(String[] a, int a0, int a1, String[] b, int b0,
+                              int b1, int[] result) {
+        int n = a1 - a0, m = b1 - b0;
+        if (n == 0 || m == 0) {
+            return;
+        }
+        int max = n + m;
+        int off = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+        int dEnd = -1;
+        for (int d = 0; d <= max && dEnd < 0; d += 1) {
+            trace.add(Arrays.copyOfRange(v, off - d - 1, off + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[off + k - 1] < v[off + k + 1])) {
+                    x = v[off + k + 1];
+                } else {
+                    x = v[off + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[a0 + x].equals(b[b0 + y])) {
+                    x += 1;
+                    y += 1;
+                }
+                v[off + k] = x;
+                if (x >= n && y >= m) {
+                    dEnd = d;
+                    break;
+                }
+            }
+        }
+        int x = n, y = m;
+        for (int d = dEnd; d >= 0; d -= 1) {
+            int[] prev = trace.get(d);
+            int k = x - y;
+            int prevK;
+            if (k == -d
+                || (k != d && at(prev, d, k - 1) < at(prev, d, k + 1))) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = at(prev, d, prevK);
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x -= 1;
+                y -= 1;
+                result[b0 + y] = a0 + x;
+            }
+            x = prevX;
+            y = prevY;
+        }
+    }
+
+    /** Returns entry K of the saved diagonal array SAVED for round D. */
+    private static int at(int[] saved, int d, int k) {
+        return saved[k + d + 1];
+    }
+
+    /** Edit script operation: a line common to both versions. */
+    static final int EQUAL = 0;
+
+    /** Edit script operation: a line only in the old version. */
+    static final int DELETE = 1;
+
+    /** Edit script operation: a line only in the new version. */
+    static final int INSERT = 2;
+
+    /** Lines of context around each hunk. */
+    private static final int CONTEXT = 3;
+
+    /** Name shown for a missing side of a diff. */
+    private static final String NULL = "/dev/null";
+}
@@ -0,0 +1,393 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/** Reads a stream of blobs, commits and branch updates in the format of
+ *  git fast-import, as written by git fast-export, and builds the commits
+ *  in one pass. Blob contents go straight to the object store; commits are
+ *  collected in memory for the caller to add to the repository at once.
+ *
+ *  The commands understood are blob, commit, reset and done, with mark,
+ *  data (counted or delimited with <<), committer, from, M, D and
+ *  deleteall inside them. Author, merge and original-oid lines, feature
+ *  and progress commands are accepted and ignored: gitlet commits have a
+ *  single parent and no author. The mode field of M is ignored, and its
+ *  data reference may be a mark, a full blob id or inline. A commit that
+ *  names no parent and starts a new branch is made a child of the
+ *  repository's initial commit, where every gitlet history begins.
+ *  @author Anh Le & Roberto Romo
+ */
+class FastImport {
+
+    /** An importer storing blobs in STORE and resolving references that
+     * are not made by the stream with COMMITS and BRANCHES, the
+     * repository's existing commits by id and branch heads by name.
+     * @param store The repository's blob store.
+     * @param commits Finds an existing commit by id, or returns null.
+     * @param branches Finds the head of an existing branch, or returns
+     * null.
+     * @param root The repository's initial commit.
+     * @param timeFormat The format of commit times.
+     */
+    FastImport(ObjectStore store, Function<ObjectId, Commit> commits,
+               Function<String, Commit> branches, Commit root,
+               String timeFormat) {
+        _store = store;
+        _root = root;
+        _existing = commits;
+        _existingBranches = branches;
+        _timeFormat = new SimpleDateFormat(timeFormat);
+    }
+
+    /** Reads the stream IN to its end or to a done command.
+     * @param in The import stream.
+     */
+    void read(InputStream in) throws IOException {
+        _in = in;
+        for (String line = nextCommand(); line != null;
+             line = nextCommand()) {
+            if (line.equals("blob")) {
+                blob();
+            } else if (line.startsWith("commit ")) {
+                commit(branchName(line.substring("commit ".length())));
+            } else if (line.startsWith("reset ")) {
+                reset(branchName(line.substring("reset ".length())));
+            } else if (line.equals("done")) {
+                return;
+            } else if (!line.startsWith("feature ")
+                       && !line.startsWith("progress ")) {
+                throw error("unsupported command: " + line);
+            }
+        }
+    }
+
+    /** Returns the commits made, oldest first. */
+    List<Commit> commits() {
+        return _commits;
+    }
+
+    /** Returns the new heads of the branches that the stream changed, by
+     * branch name. A branch that was reset and then left without commits
+     * maps to null. */
+    Map<String, Commit> branches() {
+        return _branches;
+    }
+
+    /** Reads a blob command. */
+    private void blob() throws IOException {
+        String mark = optional("mark ");
+        skip("original-oid ");
+        ObjectId id = _store.put(data(readLine()));
+        if (mark != null) {
+            _marks.put(mark, id);
+        }
+    }
+
+    /** Reads a commit command for BRANCH. */
+    private void commit(String branch) throws IOException {
+        String mark = optional("mark ");
+        skip("original-oid ");
+        skip("author ");
+        String committer = optional("committer ");
+        String message = new String(data(readLine()), StandardCharsets.UTF_8);
+        if (message.endsWith("\n")) {
+            message = message.substring(0, message.length() - 1);
+        }
+        Commit parent = tip(branch);
+        String from = optional("from ");
+        if (from != null) {
+            parent = commitRef(from);
+        } else if (parent == null) {
+            parent = _root;
+        }
+        while (optional("merge ") != null) {
+            continue;
+        }
+        PathMap<ObjectId> files = parent.files();
+        TreeSet<String> changed = new TreeSet<>();
+        for (String line = peekLine(); line != null; line = peekLine()) {
+            if (!line.equals("deleteall") && !line.startsWith("D ")
+                    && !line.startsWith("M ")) {
+                break;
+            }
+            readLine();
+            if (line.equals("deleteall")) {
+                changed.addAll(files.keySet());
+                files = PathMap.empty();
+            } else if (line.startsWith("D ")) {
+                String path = path(line.substring(2));
+                changed.add(path);
+                files = files.minus(path);
+            } else if (line.startsWith("M ")) {
+                String[] fields = line.split(" ", 4);
+                if (fields.length < 4) {
+                    throw error("bad file change: " + line);
+                }
+                String path = path(fields[3]);
+                ObjectId id = fields[2].equals("inline")
+                    ? _store.put(data(readLine())) : blobRef(fields[2]);
+                changed.add(path);
+                files = files.plus(path, id);
+            }
+        }
+        Commit commit = new Commit(message, parent, files, changed,
+                                   time(committer));
+        _commits.add(commit);
+        _made.put(commit.sha(), commit);
+        _branches.put(branch, commit);
+        if (mark != null) {
+            _marks.put(mark, commit.sha());
+        }
+    }
+
+    /** Reads a reset command for BRANCH. */
+    private void reset(String branch) throws IOException {
+        String from = optional("from ");
+        if (from != null) {
+            _branches.put(branch, commitRef(from));
+        } else {
+            _branches.put(branch, null);
+        }
+    }
+
+    /** Returns the current head of BRANCH, or null if it has none. */
+    private Commit tip(String branch) {
+        if (_branches.containsKey(branch)) {
+            return _branches.get(branch);
+        }
+        return _existingBranches.apply(branch);
+    }
+
+    /** Returns the commit named by REF: a mark, a full commit id or a
+     * branch name. */
+    private Commit commitRef(String ref) {
+        Commit result;
+        if (ref.startsWith(":")) {
+            result = commit(_marks.get(ref));
+        } else if (ObjectId.parse(ref) != null) {
+            result = commit(ObjectId.parse(ref));
+        } else {
+            result = tip(branchName(ref));
+        }
+        if (result == null) {
+            throw error("unknown commit: " + ref);
+        }
+        return result;
+    }
+
+    /** Returns the commit ID, made by this stream or already present, or
+     * null. */
+    private Commit commit(ObjectId id) {
+        if (id == null) {
+            return null;
+        }
+        Commit result = _made.get(id);
+        return result != null ? result : _existing.apply(id);
+    }
+
+    /** Returns the blob id named by REF: a mark or a full blob id. */
+    private ObjectId blobRef(String ref) {
+        ObjectId id = ref.startsWith(":") ? _marks.get(ref)
+            : ObjectId.parse(ref);
+        if (id == null || !_store.contains(id)) {
+            throw error("unknown blob: " + ref);
+        }
+        return id;
+    }
+
+    /** Returns the commit time given by the committer line COMMITTER, whose
+     * last two fields are seconds since the epoch and a zone offset, or the
+     * current time if COMMITTER is null. */
+    private String time(String committer) {
+        if (committer == null) {
+            return _timeFormat.format(new Date());
+        }
+        String[] fields = committer.trim().split(" ");
+        try {
+            long seconds = Long.parseLong(fields[fields.length - 2]);
+            return _timeFormat.format(new Date(seconds * 1000));
+        } catch (NumberFormatException
+                 | ArrayIndexOutOfBoundsException excp) {
+            throw error("bad committer: " + committer);
+        }
+    }
+
+    /** Returns the branch named by REF, without any refs/heads/ prefix. */
+    private static String branchName(String ref) {
+        return ref.startsWith("refs/heads/")
+            ? ref.substring("refs/heads/".length()) : ref;
+    }
+
+    /** Returns PATH with any surrounding double quotes and their escapes
+     * removed. */
+    private static String path(String path) {
+        if (!path.startsWith("\"")) {
+            return path;
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < path.length() - 1; i += 1) {
+            char c = path.charAt(i);
+            if (c == '\\' && i + 1 < path.length() - 1) {
+                i += 1;
+                c = path.charAt(i);
+                c = c == 'n' ? '\n' : c == 't' ? '\t' : c;
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    /** Reads the contents introduced by the data command LINE, which gives
+     * either their length in bytes or a delimiter line after <<. */
+    private byte[] data(String line) throws IOException {
+        if (line == null || !line.startsWith("data ")) {
+            throw error("expected data: " + line);
+        }
+        String arg = line.substring("data ".length());
+        if (arg.startsWith("<<")) {
+            String delim = arg.substring(2);
+            StringBuilder text = new StringBuilder();
+            for (String l = readLine(); !delim.equals(l); l = readLine()) {
+                if (l == null) {
+                    throw error("unterminated data");
+                }
+                text.append(l).append('\n');
+            }
+            return text.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        int n;
+        try {
+            n = Integer.parseInt(arg);
+        } catch (NumberFormatException excp) {
+            throw error("bad data length: " + arg);
+        }
+        byte[] result = new byte[n];
+        for (int off = 0; off < n;) {
+            int k = _in.read(result, off, n - off);
+            if (k < 0) {
+                throw error("truncated data");
+            }
+            off += k;
+        }
+        if (peekLine() != null && peekLine().isEmpty()) {
+            readLine();
+        }
+        return result;
+    }
+
+    /** Returns the rest of the next line if it starts with PREFIX, consuming
+     * it, and otherwise null. */
+    private String optional(String prefix) throws IOException {
+        String line = peekLine();
+        if (line != null && line.startsWith(prefix)) {
+            readLine();
+            return line.substring(prefix.length());
+        }
+        return null;
+    }
+
+    /** Consumes the next line if it starts with PREFIX. */
+    private void skip(String prefix) throws IOException {
+        optional(prefix);
+    }
+
+    /** Returns the next line that is not blank or a comment, consuming it,
+     * or null at the end of the stream. */
+    private String nextCommand() throws IOException {
+        for (String line = readLine(); line != null; line = readLine()) {
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the next line without consuming it, or null at the end of
+     * the stream. */
+    private String peekLine() throws IOException {
+        if (!_peeked) {
+            _next = readRawLine();
+            _peeked = true;
+        }
+        return _next;
+    }
+
+    /** Returns the next line, without its terminator, or null at the end
+     * of the stream. */
+    private String readLine() throws IOException {
+        String line = peekLine();
+        _peeked = false;
+        return line;
+    }
+
+    /** Reads one line from the stream. */
+    private String readRawLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c = _in.read();
+        if (c < 0) {
+            return null;
+        }
+        for (; c >= 0 && c != '\n'; c = _in.read()) {
+            line.write(c);
+        }
+        _lineNum += 1;
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Returns an exception describing the malformed input MSG. */
+    private IllegalArgumentException error(String msg) {
+        return new IllegalArgumentException("fast-import: line " + _lineNum
+                                            + ": " + msg);
+    }
+
+    /** Destination of the blobs. */
+    private final ObjectStore _store;
+
+    /** Commits that were present before the import. */
+    private final Function<ObjectId, Commit> _existing;
+
+    /** Branch heads from before the import. */
+    private final Function<String, Commit> _existingBranches;
+
+    /** Formats commit times. */
+    private final SimpleDateFormat _timeFormat;
+
+    /** The initial commit, parent of commits that start a history. */
+    private final Commit _root;
+
+    /** Commits made, oldest first. */
+    private final List<Commit> _commits = new ArrayList<>();
+
+    /** Commits made, by id. */
+    private final Map<ObjectId, Commit> _made = new HashMap<>();
+
+    /** New branch heads. */
+    private final Map<String, Commit> _branches = new LinkedHashMap<>();
+
+    /** Ids of marked blobs and commits, by mark. */
+    private final Map<String, ObjectId> _marks = new HashMap<>();
+
+    /** The stream being read. */
+    private InputStream _in;
+
+    /** The line returned by the next readLine if _peeked. */
+    private String _next;
+
+    /** True iff _next holds a line read ahead. */
+    private boolean _peeked;
+
+    /** Number of lines read. */
+    private int _lineNum;
+}
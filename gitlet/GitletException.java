@@ -0,0 +1,22 @@
+package gitlet;
+
+/** General exception indicating that a Gitlet command could not be
+ *  completed. A command run from the command line has already reported
+ *  the reason to the user; one run through a Repository gives it as the
+ *  message.
+ *  @author Anh Le & Roberto Romo
+ */
+public class GitletException extends RuntimeException {
+
+    /** A GitletException with no message. */
+    public GitletException() {
+        super();
+    }
+
+    /** A GitletException with message MSG.
+     * @param msg Description of the failure.
+     */
+    public GitletException(String msg) {
+        super(msg);
+    }
+}
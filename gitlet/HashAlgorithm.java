@@ -0,0 +1,160 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+
+/** The hash functions that can name the objects of a repository. Each
+ *  repository uses one, recorded in the format file of its .gitlet
+ *  directory when it is created; a repository without a format file uses
+ *  SHA-1.
+ *
+ *  Digests are kept one per thread and reused rather than looked up for
+ *  each hash. The JDK's SHA-1 and SHA-256 providers are compiled to the
+ *  processor's hash instructions where they exist, so reusing a digest
+ *  leaves only the hashing itself.
+ *  @author Anh Le & Roberto Romo
+ */
+public enum HashAlgorithm {
+
+    /** SHA-1, 160-bit ids. */
+    SHA1("sha1", "SHA-1", 20),
+
+    /** SHA-256, 256-bit ids. */
+    SHA256("sha256", "SHA-256", 32);
+
+    /** An algorithm called NAME in format files, and JAVANAME by the JDK,
+     * whose digests are LENGTH bytes. */
+    HashAlgorithm(String name, String javaName, int length) {
+        _name = name;
+        _javaName = javaName;
+        _length = length;
+        _digests = ThreadLocal.withInitial(this::newDigest);
+    }
+
+    /** Returns the algorithm called NAME in format files, or null if there
+     * is none.
+     * @param name An algorithm name, such as sha1 or sha256.
+     */
+    static HashAlgorithm named(String name) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm._name.equals(name)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the algorithm of the repository whose .gitlet directory is
+     * DIR, as recorded in its format file.
+     * @param dir A .gitlet directory, which need not exist.
+     */
+    static HashAlgorithm of(File dir) {
+        File file = new File(dir, FORMAT);
+        if (!file.isFile()) {
+            return SHA1;
+        }
+        String text = new String(Utils.readContents(file),
+                                 StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            String[] fields = line.trim().split(" ");
+            if (fields.length == 2 && fields[0].equals(OBJECT_FORMAT)) {
+                HashAlgorithm result = named(fields[1]);
+                if (result == null) {
+                    throw new IllegalArgumentException(
+                        "unknown object format: " + fields[1]);
+                }
+                return result;
+            }
+        }
+        return SHA1;
+    }
+
+    /** Records this algorithm in the format file of the .gitlet directory
+     * DIR.
+     * @param dir A .gitlet directory.
+     */
+    void record(File dir) {
+        Utils.writeContents(new File(dir, FORMAT),
+                            (OBJECT_FORMAT + " " + _name + "\n")
+                            .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the name of this algorithm in format files. */
+    String formatName() {
+        return _name;
+    }
+
+    /** Returns the number of bytes in a digest. */
+    int length() {
+        return _length;
+    }
+
+    /** Returns the number of hex digits in a digest. */
+    int hexLength() {
+        return 2 * _length;
+    }
+
+    /** Returns the digest of the concatenation of VALS, which may be any
+     * mixture of byte arrays and Strings.
+     * @param vals The hashed values.
+     */
+    byte[] digest(Object... vals) {
+        MessageDigest md = _digests.get();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                md.reset();
+                throw new IllegalArgumentException("improper type to hash");
+            }
+        }
+        return md.digest();
+    }
+
+    /** Returns a new digest for this algorithm, without the pool. */
+    MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(_javaName);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                                               + _javaName);
+        }
+    }
+
+    /** Returns a fast checksum of the concatenation of PARTS. It is CRC-32C,
+     * which the JDK computes with the processor's CRC instructions, and it
+     * guards records against damage, not against tampering, so it may
+     * stand in for a digest only where ids are not needed.
+     * @param parts The checked bytes.
+     */
+    static int checksum(byte[]... parts) {
+        CRC32C crc = new CRC32C();
+        for (byte[] part : parts) {
+            crc.update(part);
+        }
+        return (int) crc.getValue();
+    }
+
+    /** Name of the format file in a .gitlet directory. */
+    static final String FORMAT = "format";
+
+    /** Key of the object format in the format file. */
+    private static final String OBJECT_FORMAT = "objectformat";
+
+    /** Name in format files. */
+    private final String _name;
+
+    /** Name of the JDK's implementation. */
+    private final String _javaName;
+
+    /** Bytes in a digest. */
+    private final int _length;
+
+    /** Each thread's digest. */
+    private final ThreadLocal<MessageDigest> _digests;
+}
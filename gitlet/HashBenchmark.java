@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/** Measures the throughput of each hash algorithm over inputs the size of
+ *  small files, typical files and large files, both with a digest looked up
+ *  for every hash, as Utils.sha1 once did, and with the pooled digests of
+ *  HashAlgorithm, and likewise the fast checksum. Usage:
+ *  java gitlet.HashBenchmark [SECONDS], where SECONDS is the time spent on
+ *  each measurement, one by default.
+ *  @author Anh Le & Roberto Romo
+ */
+class HashBenchmark {
+
+    /** Not instantiable. */
+    private HashBenchmark() {
+    }
+
+    /** Prints the throughput of each way of hashing, in MiB/s.
+     * @param args Optionally, the seconds spent on each measurement.
+     */
+    public static void main(String... args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1;
+        System.out.printf("%-16s", "");
+        for (int size : SIZES) {
+            System.out.printf("%12s", size + " B");
+        }
+        System.out.println("    (MiB/s)");
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            row(algorithm.formatName() + " new", seconds, data -> {
+                MessageDigest md = algorithm.newDigest();
+                md.update(data);
+                md.digest();
+            });
+            row(algorithm.formatName() + " pooled", seconds,
+                data -> algorithm.digest(data));
+        }
+        row("crc32c", seconds, data -> HashAlgorithm.checksum(data));
+    }
+
+    /** Prints the line labeled NAME giving the throughput of HASH at each
+     * size, measured for SECONDS each after a warm-up. */
+    private static void row(String name, double seconds,
+                            Consumer<byte[]> hash) {
+        System.out.printf("%-16s", name);
+        for (int size : SIZES) {
+            byte[] data = new byte[size];
+            new Random(size).nextBytes(data);
+            measure(hash, data, seconds / 2);
+            System.out.printf("%12.1f", measure(hash, data, seconds));
+        }
+        System.out.println();
+    }
+
+    /** Returns the MiB/s at which HASH consumes DATA, hashed repeatedly for
+     * about SECONDS. */
+    private static double measure(Consumer<byte[]> hash, byte[] data,
+                                  double seconds) {
+        long limit = (long) (seconds * 1e9);
+        long start = System.nanoTime();
+        long bytes = 0;
+        long elapsed;
+        do {
+            for (int i = 0; i < BATCH; i += 1) {
+                hash.accept(data);
+            }
+            bytes += (long) BATCH * data.length;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < limit);
+        return bytes / (elapsed / 1e9) / (1 << 20);
+    }
+
+    /** Input sizes measured, in bytes. */
+    private static final int[] SIZES = { 64, 4 << 10, 1 << 20 };
+
+    /** Hashes between clock readings. */
+    private static final int BATCH = 16;
+}
@@ -0,0 +1,323 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/** A write-ahead journal that makes new blobs durable in batches. Instead
+ *  of syncing every blob file it writes, the blob store appends each small
+ *  blob to the journal as well, and the journal is synced once, just
+ *  before the repository state that refers to the new blobs is saved. All
+ *  the blobs of a command, or of a whole batch script, share that fsync.
+ *
+ *  The journal starts with the id of the boot during which it was begun.
+ *  When a process dies, the blob files it wrote survive in the operating
+ *  system's cache, so recovery merely cuts off a batch that was never
+ *  committed. After a reboot, recovery rewrites each journaled blob whose
+ *  file was lost and then checkpoints: it syncs the blob files and removes
+ *  the journal. A checkpoint also happens whenever a commit leaves the
+ *  journal larger than CHECKPOINT_SIZE.
+ *  @author Anh Le & Roberto Romo
+ */
+class Journal {
+
+    /** A journal kept in FILE.
+     * @param file The journal file, which need not exist yet.
+     */
+    Journal(File file) {
+        _file = file;
+    }
+
+    /** Appends blob ID, whose contents are CONTENTS, to the current batch.
+     * The record is durable only once the batch is committed.
+     * @param id A blob id.
+     * @param contents The contents of the blob, at most MAX_BLOB bytes.
+     */
+    synchronized void add(ObjectId id, byte[] contents) {
+        byte[] raw = id.bytes();
+        ByteBuffer record = ByteBuffer.allocate(1 + raw.length + 4
+                                                + contents.length + 4);
+        record.put(BLOB).put(raw).putInt(contents.length).put(contents)
+            .putInt(crc(raw, contents));
+        append(record);
+        _pending = true;
+    }
+
+    /** Ends the current batch, if it holds anything, with a commit record
+     * and forces the journal to disk. */
+    synchronized void commit() {
+        if (!_pending) {
+            return;
+        }
+        append(ByteBuffer.allocate(1 + 8).put(COMMIT).putLong(COMMIT_MARK));
+        try {
+            _channel.force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _pending = false;
+    }
+
+    /** Returns true iff the journal has outgrown CHECKPOINT_SIZE. */
+    boolean full() {
+        return _file.length() > CHECKPOINT_SIZE;
+    }
+
+    /** Syncs the file of every blob in the journal, as given by FILES, and
+     * then removes the journal. Any uncommitted batch is discarded.
+     * @param files Returns the file holding a blob.
+     */
+    synchronized void checkpoint(Function<ObjectId, File> files) {
+        close();
+        Set<File> dirs = new LinkedHashSet<>();
+        read(false, (id, contents) -> {
+            File blob = files.apply(id);
+            if (blob.isFile()) {
+                Utils.sync(blob);
+                dirs.add(blob.getParentFile());
+            }
+        });
+        for (File dir : dirs) {
+            Utils.sync(dir);
+        }
+        _file.delete();
+        _pending = false;
+    }
+
+    /** Repairs the store after a crash. The batch, if any, that was being
+     * written when the process died is cut off. If the machine has been
+     * restarted since the journal was begun, each journaled blob whose
+     * file, as given by FILES, lacks its contents is passed to REPAIR, and
+     * the journal is then checkpointed.
+     * @param files Returns the file holding a blob.
+     * @param repair Rewrites the file of a blob with the given contents.
+     */
+    synchronized void recover(Function<ObjectId, File> files,
+                              BiConsumer<ObjectId, byte[]> repair) {
+        long length = _file.length();
+        if (length == 0) {
+            return;
+        }
+        String boot = header();
+        boolean rebooted = boot == null || boot.isEmpty()
+            || !boot.equals(bootId());
+        if (!rebooted && committed(length)) {
+            return;
+        }
+        long end = read(rebooted, (id, contents) -> {
+            if (contents != null && !holds(files.apply(id), contents)) {
+                repair.accept(id, contents);
+            }
+        });
+        if (rebooted || end < 0) {
+            checkpoint(files);
+        } else if (end < length) {
+            try (RandomAccessFile out = new RandomAccessFile(_file, "rw")) {
+                out.setLength(end);
+                out.getFD().sync();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Appends RECORD, which has been filled, to the journal, starting the
+     * journal with its header if it is empty. */
+    private void append(ByteBuffer record) {
+        try {
+            if (_channel == null) {
+                _file.getParentFile().mkdirs();
+                _channel = FileChannel.open(_file.toPath(),
+                                            StandardOpenOption.CREATE,
+                                            StandardOpenOption.WRITE,
+                                            StandardOpenOption.APPEND);
+                if (_channel.size() == 0) {
+                    byte[] boot = bootId().getBytes(StandardCharsets.UTF_8);
+                    write(ByteBuffer.allocate(4 + 2 + boot.length)
+                          .putInt(MAGIC).putShort((short) boot.length)
+                          .put(boot));
+                }
+            }
+            write(record);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes all of the filled buffer BUF to the journal. */
+    private void write(ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            _channel.write(buf);
+        }
+    }
+
+    /** Closes the journal for appending, if it is open. */
+    private void close() {
+        if (_channel != null) {
+            try {
+                _channel.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _channel = null;
+        }
+    }
+
+    /** Returns the boot id in the journal's header, or null if the header
+     * is damaged. */
+    private String header() {
+        try (DataInputStream in = new DataInputStream(
+                 new FileInputStream(_file))) {
+            return in.readInt() == MAGIC ? in.readUTF() : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Returns true iff the journal, whose length is LENGTH, ends with a
+     * commit record. */
+    private boolean committed(long length) {
+        try (RandomAccessFile in = new RandomAccessFile(_file, "r")) {
+            if (length < 1 + 8) {
+                return false;
+            }
+            in.seek(length - 1 - 8);
+            return in.readByte() == COMMIT && in.readLong() == COMMIT_MARK;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Reads the journal, passing each blob record to VISIT with its
+     * contents if CONTENTS and otherwise with null. Reading stops at the
+     * first record that is cut short or, when CONTENTS, fails its check;
+     * records after the last commit record are visited nonetheless.
+     * Returns the length of the journal up to its last commit record, or
+     * -1 if its header is damaged. */
+    private long read(boolean contents, BiConsumer<ObjectId, byte[]> visit) {
+        long end = -1;
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(_file)))) {
+            if (in.readInt() != MAGIC) {
+                return -1;
+            }
+            String boot = in.readUTF();
+            long pos = 4 + 2 + boot.getBytes(StandardCharsets.UTF_8).length;
+            end = pos;
+            byte[] raw = new byte[ObjectId.algorithm().length()];
+            while (true) {
+                byte type = in.readByte();
+                if (type == COMMIT && in.readLong() == COMMIT_MARK) {
+                    pos += 1 + 8;
+                    end = pos;
+                    continue;
+                } else if (type != BLOB) {
+                    break;
+                }
+                in.readFully(raw);
+                int n = in.readInt();
+                if (n < 0 || n > MAX_BLOB) {
+                    break;
+                }
+                byte[] data = null;
+                if (contents) {
+                    data = new byte[n];
+                    in.readFully(data);
+                    if (in.readInt() != crc(raw, data)) {
+                        break;
+                    }
+                } else {
+                    in.skipNBytes(n + 4);
+                }
+                pos += 1 + raw.length + 4 + n + 4;
+                visit.accept(ObjectId.of(raw), data);
+            }
+        } catch (EOFException excp) {
+            return end;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return end;
+    }
+
+    /** Returns true iff FILE holds exactly CONTENTS. */
+    private static boolean holds(File file, byte[] contents) {
+        return file.isFile() && file.length() == contents.length
+            && Arrays.equals(Utils.readContents(file), contents);
+    }
+
+    /** Returns the checksum of a blob record for the blob whose raw id is
+     * RAW and whose contents are CONTENTS. */
+    private static int crc(byte[] raw, byte[] contents) {
+        return HashAlgorithm.checksum(raw, contents);
+    }
+
+    /** Returns the id of the current boot of the machine. Where the system
+     * does not provide one, as on macOS, the start time of process 1,
+     * which lives as long as the boot, stands in for it. Returns the empty
+     * string if neither is known. */
+    private static String bootId() {
+        if (_bootId == null) {
+            try {
+                _bootId = new String(Files.readAllBytes(Paths.get(BOOT_ID)),
+                                     StandardCharsets.UTF_8).trim();
+            } catch (IOException | SecurityException excp) {
+                _bootId = ProcessHandle.of(1)
+                    .flatMap(init -> init.info().startInstant())
+                    .map(start -> "init@" + start.getEpochSecond())
+                    .orElse("");
+            }
+        }
+        return _bootId;
+    }
+
+    /** Largest blob kept in the journal. Larger blobs are synced on their
+     * own, which costs little next to writing them. */
+    static final int MAX_BLOB = 1 << 20;
+
+    /** Journal size beyond which a commit is followed by a checkpoint. */
+    static final long CHECKPOINT_SIZE = 8 << 20;
+
+    /** First word of a journal. */
+    private static final int MAGIC = 0x474a4e32;
+
+    /** Type of a blob record. */
+    private static final byte BLOB = 'B';
+
+    /** Type of a commit record. */
+    private static final byte COMMIT = 'C';
+
+    /** Word ending a commit record. */
+    private static final long COMMIT_MARK = 0x676974636f6d6d74L;
+
+    /** Where Linux gives the id of the current boot. */
+    private static final String BOOT_ID = "/proc/sys/kernel/random/boot_id";
+
+    /** The id of the current boot, once read. */
+    private static String _bootId;
+
+    /** The journal file. */
+    private final File _file;
+
+    /** The journal, while it is open for appending. */
+    private FileChannel _channel;
+
+    /** True iff records have been added since the last commit. */
+    private boolean _pending;
+}
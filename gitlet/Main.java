@@ -1,17 +1,31 @@
 package gitlet;
 
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.FileDescriptor;
+import java.io.OutputStream;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -19,6 +33,12 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.ObjectInputStream;
+import java.nio.file.FileSystems;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Anh Le & Roberto Romo
@@ -27,12 +47,12 @@ public class Main implements Serializable {
 
     /** Gitlet initializer. */
     public Main() {
-        staged = new HashSet<>();
         removed = new HashSet<>();
-        commits = new HashMap<>();
-        branches = new HashMap<>();
-        messages = new HashMap<>();
+        commits = new ObjectIdMap<>();
+        branches = new Refs(null, commits::get);
+        messages = new ObjectIdMap<>();
         stagedFiles = new HashMap<>();
+        remotes = new HashMap<>();
     }
 
     /** Checkout command.
@@ -55,720 +75,2221 @@ public class Main implements Serializable {
             System.out.println("Please enter a command.");
             System.exit(0);
         }
+        if (!COMMANDS.contains(args[0])) {
+            findRoot();
+            gitlet = new Main();
+            gitlet._partial = true;
+            gitlet.run(args);
+            return;
+        } else if (METADATA_COMMANDS.contains(args[0])) {
+            gitlet = partialLoader();
+            if (gitlet != null) {
+                gitlet.run(args);
+                return;
+            }
+        }
         gitlet = loader();
+        if (_loadError != null) {
+            if (args[0].equals("fsck")) {
+                System.out.println("error: gitlet.ser is unreadable: "
+                        + _loadError);
+            } else {
+                System.out.println("The repository state in gitlet.ser is "
+                        + "unreadable; run fsck.");
+            }
+            System.exit(0);
+        }
         if (gitlet == null) {
             gitlet = new Main();
+        } else {
+            gitlet.store().recover();
+        }
+        if (args[0].equals("batch")) {
+            batch(args);
+            return;
+        }
+        try {
+            gitlet.run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Runs the commands of a script, one per line, against a single
+     * in-memory repository. The script is read from the file named by
+     * ARGS[1], or from the standard input if there is none. Blank lines
+     * and lines starting with # are ignored, and operands may be quoted
+     * as in the shell. The repository is saved after each command that
+     * makes a commit and once more at the end. A failing command is
+     * reported on the standard error and the script continues.
+     * @param args User's input.
+     */
+    private static void batch(String... args) {
+        if (args.length > 2) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+        _batch = true;
+        try (BufferedReader in = args.length == 2
+                 ? Files.newBufferedReader(Paths.get(args[1]))
+                 : new BufferedReader(new InputStreamReader(System.in))) {
+            int lineNum = 0;
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                lineNum += 1;
+                String[] cmnd = tokenize(line);
+                if (cmnd.length == 0 || cmnd[0].startsWith("#")) {
+                    continue;
+                }
+                _failed = false;
+                try {
+                    if (cmnd[0].equals("batch")) {
+                        error("No command with that name exists.");
+                        throw new GitletException();
+                    }
+                    gitlet.run(cmnd);
+                    switch (cmnd[0]) {
+                    case "init": case "commit": case "merge":
+                    case "cherry-pick": case "stash":
+                        flush();
+                        break;
+                    default:
+                        break;
+                    }
+                } catch (GitletException | IllegalArgumentException excp) {
+                    if (excp instanceof GitletException
+                        && excp.getMessage() != null) {
+                        System.out.println(excp.getMessage());
+                    }
+                    _failed = true;
+                }
+                if (_failed) {
+                    System.err.println("batch: line " + lineNum
+                            + " failed: " + line.trim());
+                }
+            }
+        } catch (IOException excp) {
+            System.out.println("Could not read " + args[1] + ".");
+        } finally {
+            try {
+                flush();
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+            }
+            _batch = false;
+        }
+    }
+
+    /** Returns the words of LINE, splitting on unquoted whitespace and
+     * removing the single or double quotes around quoted words.
+     * @param line One line of a batch script.
+     */
+    private static String[] tokenize(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (char c : line.toCharArray()) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                word = word == null ? new StringBuilder() : word;
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else {
+                word = word == null ? new StringBuilder() : word;
+                word.append(c);
+            }
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    /** Ends the current command. Outside batch mode this exits, while in
+     * batch mode only the rest of the current command is abandoned. */
+    private static void exit() {
+        if (_batch) {
+            throw new GitletException();
+        }
+        System.exit(0);
+    }
+
+    /** Prints MESSAGE, which says why the current command failed, and
+     * records the failure for batch to report.
+     * @param message The error message.
+     */
+    private static void error(String message) {
+        System.out.println(message);
+        _failed = true;
+    }
+
+    /** Writes the repository if a batch has left unsaved changes. */
+    private static void flush() {
+        if (_dirty && gitlet != null) {
+            _dirty = false;
+            write(gitlet);
+        }
+    }
+
+    /** Runs the single command ARGS against this repository.
+     * @param args User's input.
+     */
+    private void run(String... args) {
+        _ignored = null;
+        _repo = null;
+        _command = String.join(" ", args);
+        branches.reason(_command);
+        isGitlet(args[0]);
+        checkOperands(args, args[0]);
+        if (!COMMANDS.contains(args[0])) {
+            error("No command with that name exists.");
+            return;
         }
-        gitlet.isGitlet(args[0]);
-        gitlet.checkOperands(args, args[0]);
         switch (args[0]) {
         case "init":
-            gitlet.init();
+            init(args.length == 2
+                 ? args[1].substring(OBJECT_FORMAT_OPTION.length())
+                 : HashAlgorithm.SHA1.formatName());
             break;
         case "add":
-            gitlet.add(args[1]);
+            add(Arrays.copyOfRange(args, 1, args.length));
             break;
         case "commit":
-            gitlet.commit(args[1]);
+            commit(args[1]);
             break;
         case "rm":
-            gitlet.rm(args[1]);
+            rm(Arrays.copyOfRange(args, 1, args.length));
             break;
         case "log":
-            gitlet.log();
+            if (args.length == 3) {
+                log(args[2]);
+            } else {
+                log();
+            }
+            break;
+        case "blame":
+            blame(args[1]);
+            break;
+        case "diff":
+            diff(args);
             break;
         case "global-log":
-            gitlet.globalLog();
+            globalLog();
             break;
         case "find":
-            gitlet.find(args[1]);
+            find(args[1]);
             break;
         case "status":
-            gitlet.status();
+            status(args.length == 2 ? Renames.threshold(args[1]) : -1);
             break;
         case "checkout":
-            gitlet.checkout(args);
+            checkout(args);
             break;
         case "branch":
-            gitlet.branch(args[1]);
+            branch(args[1]);
             break;
         case "rm-branch":
-            gitlet.removeBranch(args[1]);
+            removeBranch(args[1]);
             break;
         case "reset":
-            gitlet.reset(args[1]);
+            reset(args[1]);
             break;
         case "merge":
-            gitlet.merge(args[1]);
+            merge(args);
+            break;
+        case "cherry-pick":
+            cherryPick(args[1]);
+            break;
+        case "bisect":
+            bisect(args);
+            break;
+        case "stash":
+            stash(args);
+            break;
+        case "clone":
+            if (args.length == 4) {
+                cloneRepo(args[2], args[3], true);
+            } else {
+                cloneRepo(args[1], args[2], false);
+            }
+            break;
+        case "add-remote":
+            addRemote(args[1], args[2]);
+            break;
+        case "rm-remote":
+            removeRemote(args[1]);
+            break;
+        case "fetch":
+            fetch(args[1], args[2]);
+            break;
+        case "push":
+            push(args[1], args[2]);
+            break;
+        case "worktree":
+            worktree(args);
+            break;
+        case "sparse-checkout":
+            sparseCheckout(args);
+            break;
+        case "archive":
+            archive(args);
+            break;
+        case "fast-import":
+            fastImport(args);
+            break;
+        case "fsck":
+            fsck(args.length == 2);
+            break;
+        case "reflog":
+            reflog(args.length == 2 ? args[1] : "HEAD");
             break;
         default:
-            System.out.println("No command with that name exists.");
+            error("No command with that name exists.");
             return;
         }
     }
 
-    /** Creates a new gitlet version-control system in the current directory. */
-    private void init() {
+    /** Creates a new gitlet version-control system in the current directory,
+     * whose objects are named by the hash algorithm ALGORITHM.
+     * @param algorithm The name of a hash algorithm, such as sha256.
+     */
+    private void init(String algorithm) {
+        HashAlgorithm format = HashAlgorithm.named(algorithm);
         if (new File(".gitlet").exists()) {
-            System.out.println("A gitlet version-control system "
+            error("A gitlet version-control system "
                     + "already exists in the current directory.");
+            return;
+        } else if (format == null) {
+            error("Unknown object format: " + algorithm + ".");
+            return;
         } else {
             File directory = new File(".gitlet");
-            String message = "initial commit";
             directory.mkdir();
-            String time = time();
-            String sha = hashCommit(message, "0", time);
-            Commit firstcommit = new Commit(message, "0", sha, time);
-            String master = "master";
-            Branch mstr = new Branch(master, firstcommit);
-            _headName = master;
-            _head = mstr;
-            branches.put(master, mstr);
-            commits.put(sha, firstcommit);
-            messages.put(sha, message);
+            format.record(directory);
+            ObjectId.use(format);
+            start();
         }
         saver(gitlet);
     }
 
-    /** Adds a copy of the file as it currently exists to the staging area.
-     * @param name Name of file to be added to the staging area.
+    /** Adds copies of the files in NAMES, as they currently exist, to the
+     * staging area. Directories are added recursively and names holding
+     * glob characters are matched against the working directory. Contents
+     * are hashed and stored in parallel, and the staging area is saved
+     * once.
+     * @param names Paths, directories or globs to be added.
      */
-    private void add(String name) {
-        if (name == null) {
-            return;
-        }
-        File file = new File(name);
-        if (!file.exists()) {
-            System.out.println("File does not exist.");
+    private void add(String... names) {
+        List<String> files = expand(names);
+        if (files == null) {
+            error("File does not exist.");
             return;
         }
-        for (String s : removed) {
-            if (s.equals(name)) {
-                removed.remove(s);
-                saver(gitlet);
-                return;
+        repository().add(files.toArray(new String[0]));
+    }
+
+    /** Returns the sorted working-directory files named by NAMES, or null
+     * if one of NAMES matches nothing.
+     * @param names Paths, directories or globs.
+     */
+    private List<String> expand(String... names) {
+        List<String> all = null;
+        TreeSet<String> result = new TreeSet<>();
+        for (String name : names) {
+            File file = new File(name);
+            if (isGlob(name)) {
+                if (all == null) {
+                    all = new ArrayList<>();
+                    Repository.walk(new File("."), "", ignored(),
+                                    ignored().root(), all);
+                }
+                List<String> matched = glob(name, all);
+                if (matched.isEmpty()) {
+                    return null;
+                }
+                result.addAll(matched);
+            } else if (file.isDirectory()) {
+                String dir = Paths.get(name).normalize().toString();
+                PathPatterns.State state = ignoreState(dir);
+                if (state != null) {
+                    Repository.walk(file, dir.isEmpty() ? "" : dir + "/",
+                                    ignored(), state, result);
+                }
+            } else if (file.isFile()) {
+                result.add(name);
+            } else {
+                return null;
             }
         }
-        for (String f : _head.commit().files().keySet()) {
-            if (Arrays.equals(Utils.readContents(_head.getFile(f)),
-                    Utils.readContents(file))
-                    && f.equals(name)) {
-                return;
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the sorted tracked or staged files named by NAMES. Globs and
+     * directory names are matched against the tracked paths, so files that
+     * were already deleted from the working directory can be named. A glob
+     * that matches nothing is returned as it is, naming no tracked file.
+     * @param names Paths, directories or globs.
+     */
+    private List<String> expandTracked(String... names) {
+        TreeSet<String> known = new TreeSet<>(_head.branchFiles().keySet());
+        known.addAll(stagedFiles.keySet());
+        TreeSet<String> result = new TreeSet<>();
+        for (String name : names) {
+            if (isGlob(name)) {
+                List<String> matched = glob(name, known);
+                if (matched.isEmpty()) {
+                    result.add(name);
+                } else {
+                    result.addAll(matched);
+                }
+                continue;
+            }
+            String dir = stripSlash(name) + "/";
+            Set<String> under = known.subSet(dir, dir + Character.MAX_VALUE);
+            if (under.isEmpty()) {
+                result.add(name);
+            } else {
+                result.addAll(under);
             }
         }
-        staged.add(name);
-        File stag = new File(name);
-        String sha = Utils.sha1(Utils.readContents(stag));
-        stagedFiles.put(sha, stag);
-        saver(gitlet);
+        return new ArrayList<>(result);
     }
 
-    /** Saves a snapshot of certain files in the current commit and staging
-     * area.
-     * @param message The commit message.
-     */
-    private void commit(String message) {
-        if (removed.isEmpty() && staged.isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            return;
+    /** Returns true iff NAME contains glob characters. */
+    private static boolean isGlob(String name) {
+        return name.indexOf('*') >= 0 || name.indexOf('?') >= 0
+            || name.indexOf('[') >= 0 || name.indexOf('{') >= 0;
+    }
+
+    /** Returns the members of PATHS matched by the glob PATTERN. */
+    private static List<String> glob(String pattern, Collection<String> paths) {
+        PathMatcher matcher =
+            FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        List<String> result = new ArrayList<>();
+        for (String path : paths) {
+            if (matcher.matches(Paths.get(path))) {
+                result.add(path);
+            }
         }
-        Map<String, String> blobs = new HashMap<>();
+        return result;
+    }
 
-        if (_head.branchFiles() != null) {
-            blobs.putAll(_head.branchFiles());
+    /** Returns NAME without its trailing slashes. */
+    private static String stripSlash(String name) {
+        while (name.length() > 1 && name.endsWith("/")) {
+            name = name.substring(0, name.length() - 1);
         }
+        return name;
+    }
 
-        for (String file: staged) {
-            blobs.put(file, null);
+    /** Returns the sorted names of the plain files in the working directory,
+     * including those in subdirectories, relative to the working directory.
+     * Untracked files matched by .gitletignore are left out, and ignored
+     * directories are not entered.
+     */
+    private List<String> workingFiles() {
+        List<String> result = new ArrayList<>();
+        Repository.walk(new File("."), "", ignored(), ignored().root(),
+                        result);
+        Set<String> found = new HashSet<>(result);
+        for (String file : index().keySet()) {
+            if (!found.contains(file) && new File(file).isFile()) {
+                result.add(file);
+            }
         }
+        Collections.sort(result);
+        return result;
+    }
 
-        for (String file : removed) {
-            blobs.remove(file);
+    /** Returns the patterns in .gitletignore, read once per command. */
+    private PathPatterns ignored() {
+        if (_ignored == null) {
+            _ignored = PathPatterns.load(new File(IGNORE_FILE));
         }
+        return _ignored;
+    }
 
-        String time = time();
-        String parentSha = _head.commit().sha();
-        String sha = hashCommit(message, parentSha, time);
-        Commit commit = new Commit(message, parentSha, sha, blobs, time);
-        messages.put(sha, message);
-        commits.put(sha, commit);
-        Branch branch = new Branch(_headName, commit);
-        branches.put(_headName, branch);
-        _head = branches.get(_headName);
-        staged.clear();
-        stagedFiles.clear();
-        removed.clear();
-        saver(gitlet);
+    /** Returns the file holding this working directory's sparse-checkout
+     * patterns. */
+    private static File sparseFile() {
+        File dir = _worktree == null ? gitletDir()
+            : Worktree.adminDir(gitletDir(), _worktree);
+        return new File(dir, "sparse-checkout");
     }
 
-    /** Removes the file from the working directory if it was tracked
-     * in the current commit. If the file had been staged, then unstage it.
-     * @param filename Name of the file to be removed.
+    /** Returns the ignore-pattern state of the directory NAME, or null if
+     * it or a directory containing it is ignored.
+     * @param name A directory relative to the working directory.
      */
-    private void rm(String filename) {
-        boolean bool  = true;
-        if (staged.contains(filename)) {
-            staged.remove(filename);
-            File file = new File(filename);
-            String sha = Utils.sha1(Utils.readContents(file));
-            stagedFiles.remove(sha);
-            bool = false;
+    private PathPatterns.State ignoreState(String name) {
+        PathPatterns ignore = ignored();
+        PathPatterns.State state = ignore.root();
+        for (String segment : name.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            state = ignore.step(state, segment);
+            if (ignore.matches(state, true)) {
+                return null;
+            }
         }
-        if (_head.branchFiles().containsKey(filename)) {
-            Utils.restrictedDelete(filename);
-            removed.add(filename);
-            bool = false;
+        return state;
+    }
+
+    /** Deletes the working file NAME if it exists and is not a directory.
+     * Like Utils.restrictedDelete, but NAME may lie in a subdirectory of the
+     * gitlet working directory.
+     * @param name Relative name of the file.
+     */
+    private static void deleteFile(String name) {
+        if (!new File(".gitlet").exists()) {
+            throw new IllegalArgumentException("not .gitlet working directory");
         }
-        if (bool) {
-            System.out.println("No reason to remove the file.");
+        File file = new File(name);
+        if (!file.isDirectory()) {
+            file.delete();
         }
-        saver(gitlet);
+    }
+
+    /** Saves a snapshot of certain files in the current commit and staging
+     * area.
+     * @param message The commit message.
+     */
+    private void commit(String message) {
+        repository().commit(message);
+    }
+
+    /** Removes the files named by FILENAMES from the working directory if
+     * they were tracked in the current commit. Staged files are unstaged.
+     * Directories and globs name every tracked or staged file they match.
+     * Nothing is removed if any of them is neither tracked nor staged.
+     * @param filenames Paths, directories or globs to be removed.
+     */
+    private void rm(String... filenames) {
+        repository().remove(expandTracked(filenames)
+                            .toArray(new String[0]));
     }
 
     /** Display information about each commit backwards along the commit tree
      * until the initial commit. */
     private void log() {
-        Commit commit = _head.commit();
-        String commitsha = commit.sha();
-        while (commit != null) {
-            String time = commit.time();
-            String message = commit.message();
+        Iterator<Repository.CommitInfo> log = repository().log();
+        while (log.hasNext()) {
+            Repository.CommitInfo commit = log.next();
             System.out.println("===");
-            System.out.println("Commit " + commitsha);
-            System.out.println(time);
-            System.out.println(message);
+            System.out.println("Commit " + commit.id());
+            System.out.println(commit.time());
+            System.out.println(commit.message());
             System.out.println();
-            commitsha = commit.psha();
-            commit = commits.get(commitsha);
         }
     }
 
-    /** Displays information about all commits ever made. */
-    private void globalLog() {
-        for (Commit comm: commits.values()) {
-            Commit commit = comm;
-            String commitsha = commit.sha();
-            String time = commit.time();
-            String message = commit.message();
+    /** Displays the commits, from the head commit backwards, that added,
+     * changed or removed FILE. Only those commits are visited.
+     * @param file Name of the file.
+     */
+    private void log(String file) {
+        for (Commit commit : pathHistory(file)) {
             System.out.println("===");
-            System.out.println("Commit " + commitsha);
-            System.out.println(time);
-            System.out.println(message);
+            System.out.println("Commit " + commit.sha());
+            System.out.println(commit.time());
+            System.out.println(commit.message());
             System.out.println();
         }
     }
 
-    /** Prints out the ids of all commits that have the given commit message.
-     * @param message The commit message.
+    /** Returns the commits, newest first, that added, changed or removed
+     * FILE in the history of the head commit. The path history index in
+     * each commit leads straight from one such commit to the previous one.
+     * @param file Name of the file.
      */
-    private  void find(String message) {
-        if (message == null || !messages.containsValue(message)) {
-            System.out.println("Found no commit with that message.");
+    private List<Commit> pathHistory(String file) {
+        List<Commit> result = new ArrayList<>();
+        Commit commit = _head.commit();
+        while (commit != null) {
+            commit = commits.get(commit.lastChange(file));
+            if (commit == null) {
+                break;
+            }
+            result.add(commit);
+            commit = commits.get(commit.psha());
+        }
+        return result;
+    }
+
+    /** Prints each line of FILE as of the head commit, preceded by the
+     * abbreviated id and time of the commit that introduced the line.
+     * @param file Name of the file.
+     */
+    private void blame(String file) {
+        if (!_head.branchFiles().containsKey(file)) {
+            error("File does not exist in that commit.");
             return;
         }
-        for (String sha : messages.keySet()) {
-            if (messages.get(sha).equals(message)) {
-                System.out.println(sha);
-            }
+        List<Commit> history = pathHistory(file);
+        Blame blamer = new Blame(store(), new File(gitletDir(), "blame"));
+        int[] owners = blamer.annotate(history, file);
+        String[] lines =
+            Diff.lines(store().get(_head.branchFiles().get(file)));
+        for (int i = 0; i < lines.length; i += 1) {
+            Commit owner = history.get(owners[i]);
+            System.out.println(owner.sha().toString().substring(0, 8) + " ("
+                    + owner.time() + " " + (i + 1) + ") " + lines[i]);
         }
     }
 
-    /** Returns true iff the file with the given fileName in working directory
-     * has similar contents with a file with the same name in head commit.
-     * @param fileName Name of the given file
+    /** Shows the changes between two versions of the files: the staging
+     * area and the working directory by default; the head commit and the
+     * staging area with --cached; a commit and the working directory (or
+     * the staging area with --cached); or two commits. Only paths whose
+     * blob ids differ are compared, the line diffs of those paths are
+     * computed in parallel, and the output is printed in path order as it
+     * becomes available. With --stat, prints only a summary of the
+     * changed lines. With -M[N], files renamed or copied with at least N
+     * percent similarity are shown as such.
+     * @param args User's input: diff [--cached] [--stat] [-M[N]]
+     * [COMMIT [COMMIT]]. A COMMIT is a branch name or a commit id.
      */
-    private boolean notModified(String fileName) {
-        File file = new File(fileName);
-        byte[] arr = Utils.readContents(file);
-        for (String f : _head.commit().files().keySet()) {
-            if (f.equals(fileName)) {
-                byte[] arr2 = Utils.readContents(_head.getFile(f));
-                if (Arrays.equals(arr, arr2)) {
-                    return true;
+    private void diff(String... args) {
+        boolean cached = false, stat = false;
+        int threshold = -1;
+        List<Commit> revs = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--cached")) {
+                cached = true;
+            } else if (Renames.threshold(args[i]) >= 0) {
+                threshold = Renames.threshold(args[i]);
+            } else if (args[i].equals("--stat")) {
+                stat = true;
+            } else {
+                Commit rev = resolve(args[i]);
+                if (rev == null) {
+                    error("No commit with that id exists.");
+                    return;
                 }
+                revs.add(rev);
             }
         }
-        return false;
-    }
-
-    /** Prints out the branches for status command. */
-    private void statusBranches() {
-        TreeMap<String, Branch> brch = new TreeMap<>(branches);
-        for (String branch: brch.keySet()) {
-            if (branch.equals(_headName)) {
-                System.out.print("*");
+        if (revs.size() > 2 || revs.size() == 2 && cached) {
+            error("Incorrect operands.");
+            return;
+        }
+        PathMap<ObjectId> index = index();
+        PathMap<ObjectId> older, newer;
+        boolean working = false;
+        if (revs.size() == 2) {
+            older = revs.get(0).files();
+            newer = revs.get(1).files();
+        } else {
+            older = !revs.isEmpty() ? revs.get(0).files()
+                : cached ? _head.branchFiles() : index;
+            if (cached) {
+                newer = index;
+            } else {
+                newer = workingTree(older, index);
+                working = true;
             }
-            System.out.println(branch);
         }
-        System.out.println();
-    }
-
-    /** Prints out the untracked files for status command. */
-    private void statusUntracked() {
-        File thisDir = new File(".");
-        List<String> dirContent = Utils.plainFilenamesIn(thisDir);
-        Collections.sort(dirContent);
-        for (String fileName : dirContent) {
-            if (!_head.branchFiles().containsKey(fileName)
-                    && !staged.contains(fileName)
-                    && !removed.contains(fileName)
-                    && !fileName.equals("gitlet.ser")) {
-                System.out.println(fileName);
+        List<String> paths = new ArrayList<>(older.changes(newer));
+        ObjectStore store = store();
+        boolean fromWorking = working;
+        Map<String, Renames.Rename> renamed = new HashMap<>();
+        if (threshold >= 0) {
+            Set<String> gone = new HashSet<>();
+            for (Renames.Rename r
+                     : new Renames(older, newer, paths,
+                                   p -> contents(store, older, p, false),
+                                   p -> contents(store, newer, p,
+                                                 fromWorking),
+                                   threshold).renames()) {
+                renamed.put(r.to(), r);
+                if (!r.copy()) {
+                    gone.add(r.from());
+                }
             }
+            paths.removeIf(gone::contains);
+        }
+        if (!stat) {
+            paths.parallelStream()
+                .map(p -> {
+                    Renames.Rename r = renamed.get(p);
+                    byte[] b = contents(store, newer, p, fromWorking);
+                    return r == null
+                        ? Diff.unified(p, contents(store, older, p, false), b)
+                        : Diff.renamed(r.from(), p, r.score(), r.copy(),
+                                       contents(store, older, r.from(),
+                                                false), b);
+                })
+                .forEachOrdered(System.out::print);
+            return;
         }
+        List<int[]> counts = paths.parallelStream()
+            .map(p -> Diff.stat(contents(store, older,
+                                         renamed.containsKey(p)
+                                         ? renamed.get(p).from() : p, false),
+                                contents(store, newer, p, fromWorking)))
+            .collect(Collectors.toList());
+        List<String> names = new ArrayList<>();
+        for (String p : paths) {
+            names.add(renamed.containsKey(p)
+                      ? renamed.get(p).from() + " => " + p : p);
+        }
+        printStat(names, counts);
     }
 
-    /** Displays what branches currently exist, and marks the current branch
-     * with a *. */
-    private void status() {
-        TreeSet<String> st = new TreeSet<>(staged);
-        TreeSet<String> rm = new TreeSet<>(removed);
-        System.out.println("=== Branches ===");
-        statusBranches();
-        System.out.println("=== Staged Files ===");
-        for (String stages: st) {
-            System.out.println(stages);
+    /** Verifies the repository and prints each problem found: branches or
+     * worktrees whose head commit is missing, parents and blobs that are
+     * missing, blobs whose contents no longer match their ids, and commits
+     * whose ids no longer match their contents. Commits that no branch
+     * reaches are listed as dangling. Blobs and commits are checked in
+     * parallel. With CONNECTIVITYONLY, only the presence of commits and
+     * blobs is checked, without reading any blob.
+     * @param connectivityOnly True for the fast check.
+     */
+    private void fsck(boolean connectivityOnly) {
+        List<String> problems = new ArrayList<>();
+        Map<String, ObjectId> heads = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> b : branches.ids("").entrySet()) {
+            heads.put("branch " + b.getKey(), b.getValue());
         }
-        System.out.println();
-        System.out.println("=== Removed Files ===");
-        for (String rmv: rm) {
-            System.out.println(rmv);
+        List<ObjectId> stashed = stashList().entries();
+        for (int i = 0; i < stashed.size(); i += 1) {
+            heads.put("stash@{" + i + "}", stashed.get(i));
         }
-        System.out.println();
-        System.out.println("=== Modifications Not Staged For Commit ===");
-        File thisDir = new File(".");
-        Set<String> deleted = new TreeSet<>();
-        Set<String> changed = new TreeSet<>();
-        List<String> dirContent = Utils.plainFilenamesIn(thisDir);
-        Collections.sort(dirContent);
-        for (String sFile : st) {
-            if (!dirContent.contains(sFile)) {
-                deleted.add(sFile);
-            }
+        if (!branches.containsKey(_headName)) {
+            problems.add("broken HEAD: no branch " + _headName);
         }
-        for (String tra : _head.branchFiles().keySet()) {
-            if (!dirContent.contains(tra) && !removed.contains(tra)) {
-                deleted.add(tra);
+        for (Map.Entry<String, Worktree> e : linkedWorktrees().entrySet()) {
+            if (!branches.containsKey(e.getValue().branch())) {
+                problems.add("broken worktree " + e.getKey() + ": no branch "
+                             + e.getValue().branch());
             }
         }
-        for (String del : deleted) {
-            System.out.println(del + " (deleted)");
-        }
-        for (String fileName : dirContent) {
-            if (_head.branchFiles().containsKey(fileName)
-                    && !notModified(fileName)
-                    && !staged.contains(fileName)) {
-                changed.add(fileName);
+        Set<ObjectId> reachable = new HashSet<>();
+        Map<ObjectId, String> blobs = new HashMap<>();
+        for (Map.Entry<String, ObjectId> head : heads.entrySet()) {
+            if (!commits.containsKey(head.getValue())) {
+                problems.add("broken " + head.getKey() + ": missing commit "
+                             + head.getValue());
+                continue;
             }
-        }
-        for (String sha : stagedFiles.keySet()) {
-            for (String f : dirContent) {
-                if (f.equals(stagedFiles.get(sha).getName())) {
-                    File di = new File(f);
-                    String sha2 = Utils.sha1(Utils.readContents(di));
-                    if (!sha2.equals(sha)) {
-                        changed.add(f);
+            for (Commit c = commits.get(head.getValue());
+                 c != null && reachable.add(c.sha());
+                 c = commits.get(c.psha())) {
+                Commit p = commits.get(c.psha());
+                if (c.psha() != null && p == null) {
+                    problems.add("missing commit " + c.psha()
+                                 + " (parent of " + c.sha() + ")");
+                }
+                Collection<String> paths = p == null ? c.files().keySet()
+                    : c.files().changes(p.files());
+                for (String path : paths) {
+                    ObjectId id = c.files().get(path);
+                    if (id != null) {
+                        blobs.putIfAbsent(id, path + " in commit " + c.sha());
                     }
                 }
             }
         }
-        for (String cha : changed) {
-            System.out.println(cha + " (modified)");
+        for (Map.Entry<String, ObjectId> e : stagedFiles.entrySet()) {
+            blobs.putIfAbsent(e.getValue(), e.getKey() + " in staging area");
+        }
+        ObjectStore store = store();
+        problems.addAll(blobs.entrySet().parallelStream().map(e -> {
+            ObjectId id = e.getKey();
+            if (!store.contains(id)) {
+                return "missing blob " + id + " (" + e.getValue() + ")";
+            } else if (!connectivityOnly
+                       && !ObjectId.hash(store.get(id)).equals(id)) {
+                return "corrupt blob " + id + " (" + e.getValue() + ")";
+            }
+            return null;
+        }).filter(Objects::nonNull).collect(Collectors.toList()));
+        if (!connectivityOnly) {
+            Set<Object> verified = ConcurrentHashMap.newKeySet();
+            problems.addAll(commits.values().parallelStream()
+                .filter(c -> !c.verify(verified))
+                .map(c -> "corrupt commit " + c.sha())
+                .collect(Collectors.toList()));
+        }
+        Collections.sort(problems);
+        for (String problem : problems) {
+            System.out.println(problem);
+        }
+        TreeSet<ObjectId> dangling = new TreeSet<>(commits.keySet());
+        dangling.removeAll(reachable);
+        for (ObjectId id : dangling) {
+            System.out.println("dangling commit " + id);
         }
-        System.out.println();
-        System.out.println("=== Untracked Files ===");
-        statusUntracked();
     }
 
-    /** Check out for file name.
-     * @param file Name of the file to be checked out in current branch.
+    /** Imports the commits and branch updates of a fast-import stream read
+     * from the file ARGS[1], or from the standard input if there is none.
+     * Blobs are stored as they are read, and the new commits and branches
+     * are added to the repository and saved once, at the end. The working
+     * directory is not changed, even if the current branch moves.
+     * @param args User's input.
      */
-    private void checkoutF(String file) {
-        if (!_head.branchFiles().containsKey(file)) {
-            System.out.println("File does not exist in that commit.");
+    private void fastImport(String... args) {
+        Commit root = _head.commit();
+        while (root.psha() != null) {
+            root = commits.get(root.psha());
+        }
+        FastImport importer = new FastImport(store(), commits::get,
+            b -> branches.containsKey(b) ? branches.get(b).commit() : null,
+            root, TIME_FORMAT);
+        try {
+            InputStream in = new BufferedInputStream(args.length == 2
+                ? new FileInputStream(args[1]) : System.in);
+            importer.read(in);
+            if (args.length == 2) {
+                in.close();
+            }
+        } catch (IOException excp) {
+            error("Could not read the import stream.");
             return;
-        } else {
-            _head.commit().restoreFile(file);
+        } catch (IllegalArgumentException excp) {
+            error(excp.getMessage());
+            return;
+        }
+        for (Commit c : importer.commits()) {
+            commits.put(c.sha(), c);
+            messages.put(c.sha(), c.message());
+        }
+        for (Map.Entry<String, Commit> e : importer.branches().entrySet()) {
+            if (e.getValue() != null) {
+                branches.put(e.getKey(), new Branch(e.getKey(), e.getValue()));
+            }
         }
+        _head = branches.get(_headName);
         saver(gitlet);
     }
 
-    /** Checkout file name with commit id.
-     * @param id A unique commit id.
-     * @param file Name of the file to be checked out with the given commit id.
+    /** Archive command: writes the files of a commit, read straight from
+     * the blob store, as a tar or zip archive to the standard output or to
+     * a file. The working directory and staging area are not touched.
+     * ARGS[1] names the commit; the options --format=tar|zip and
+     * --output=FILE may follow. Without --format, an output file ending in
+     * .zip gets a zip archive and anything else a tar archive.
+     * @param args User's input.
      */
-    private void checkoutID(String id, String file) {
-        boolean exit = true;
-        if (id.length() >= 6) {
-            for (String i : commits.keySet()) {
-                if (i.substring(0, 6).equals(id.substring(0, 6))) {
-                    exit = false;
-                    Commit arg = commits.get(i);
-                    if (!arg.files().containsKey(file)) {
-                        System.out.println("File does not exist in that "
-                                + "commit.");
-                        return;
-                    }
-                    arg.restoreFile(file);
-                }
+    private void archive(String... args) {
+        String format = null, output = null;
+        for (int i = 2; i < args.length; i += 1) {
+            if (args[i].startsWith("--format=")) {
+                format = args[i].substring("--format=".length());
+            } else if (args[i].startsWith("--output=")) {
+                output = args[i].substring("--output=".length());
+            } else {
+                format = "";
             }
         }
-        if (exit) {
-            System.out.println("No commit with that id exists.");
+        if (format == null) {
+            format = output != null && output.endsWith(".zip") ? "zip" : "tar";
+        }
+        if (!format.equals("tar") && !format.equals("zip")) {
+            error("Incorrect operands.");
+            return;
+        }
+        Commit commit = resolve(args[1]);
+        if (commit == null) {
+            error("No commit with that id exists.");
             return;
         }
-        saver(gitlet);
+        long mtime;
+        try {
+            mtime = new SimpleDateFormat(TIME_FORMAT).parse(commit.time())
+                .getTime() / 1000;
+        } catch (ParseException excp) {
+            mtime = 0;
+        }
+        System.out.flush();
+        try {
+            FileOutputStream dest = output == null
+                ? new FileOutputStream(FileDescriptor.out)
+                : new FileOutputStream(output);
+            OutputStream out = new BufferedOutputStream(dest);
+            if (format.equals("zip")) {
+                Archive.zip(commit.files(), store(), mtime, out);
+            } else {
+                Archive.tar(commit.files(), store(), mtime, out);
+            }
+            out.flush();
+            if (output != null) {
+                dest.close();
+            }
+        } catch (IOException excp) {
+            error("Could not write the archive.");
+        }
+    }
+
+    /** Prints a diff summary of the files PATHS, whose inserted and
+     * deleted line counts are COUNTS.
+     * @param paths The changed files.
+     * @param counts The {inserted, deleted} line counts of each file.
+     */
+    private static void printStat(List<String> paths, List<int[]> counts) {
+        int width = 0, most = 0, ins = 0, del = 0;
+        for (int i = 0; i < paths.size(); i += 1) {
+            width = Math.max(width, paths.get(i).length());
+            most = Math.max(most, counts.get(i)[0] + counts.get(i)[1]);
+        }
+        for (int i = 0; i < paths.size(); i += 1) {
+            int[] c = counts.get(i);
+            ins += c[0];
+            del += c[1];
+            int plus = c[0], minus = c[1];
+            if (most > STAT_WIDTH) {
+                plus = (int) Math.ceil((double) plus * STAT_WIDTH / most);
+                minus = (int) Math.ceil((double) minus * STAT_WIDTH / most);
+            }
+            String name = String.format("%-" + width + "s", paths.get(i));
+            System.out.println(" " + name + " | " + (c[0] + c[1]) + " "
+                    + repeat('+', plus) + repeat('-', minus));
+        }
+        System.out.println(" " + paths.size() + " files changed, " + ins
+                + " insertions(+), " + del + " deletions(-)");
+    }
+
+    /** Returns a string of N copies of C. */
+    private static String repeat(char c, int n) {
+        char[] result = new char[n];
+        Arrays.fill(result, c);
+        return new String(result);
+    }
+
+    /** Returns the contents of PATH in FILES, or null if FILES does not
+     * track it. Contents come from the working file if WORKING, and
+     * otherwise from STORE.
+     * @param store The blob store.
+     * @param files Blob ids of a version of the files.
+     * @param path Name of a file.
+     * @param working True iff FILES describes the working directory.
+     */
+    private static byte[] contents(ObjectStore store, PathMap<ObjectId> files,
+                                   String path, boolean working) {
+        ObjectId id = files.get(path);
+        if (id == null) {
+            return null;
+        }
+        return working ? Utils.readContents(new File(path)) : store.get(id);
+    }
+
+    /** Returns the staging area as a blob map: the head commit's files,
+     * with the staged files added and the removed files taken out. */
+    PathMap<ObjectId> index() {
+        PathMap<ObjectId> result = _head.branchFiles();
+        for (Map.Entry<String, ObjectId> e : stagedFiles.entrySet()) {
+            result = result.plus(e.getKey(), e.getValue());
+        }
+        for (String file : removed) {
+            result = result.minus(file);
+        }
+        return result;
+    }
+
+    /** Returns a blob map of the working files that are tracked by either
+     * OLDER or INDEX, hashing the files in parallel. The blobs are not
+     * stored. Files left out by sparse checkout count as unchanged from
+     * INDEX.
+     * @param older A version of the files being compared.
+     * @param index The staging area.
+     */
+    private PathMap<ObjectId> workingTree(PathMap<ObjectId> older,
+                                          PathMap<ObjectId> index) {
+        Set<String> paths = new HashSet<>(older.keySet());
+        paths.addAll(index.keySet());
+        Map<String, ObjectId> ids = paths.parallelStream()
+            .filter(p -> new File(p).isFile())
+            .collect(Collectors.toConcurrentMap(p -> p,
+                p -> ObjectId.hash(Utils.readContents(new File(p)))));
+        for (String p : index.keySet()) {
+            if (!ids.containsKey(p) && !repository().materialized(p)) {
+                ids.put(p, index.get(p));
+            }
+        }
+        return PathMap.of(ids);
+    }
+
+    /** Returns the commit named by REV, which is a branch name or a full or
+     * abbreviated commit id, or null if there is none.
+     * @param rev A branch name or commit id.
+     */
+    private Commit resolve(String rev) {
+        Branch branch = branches.get(rev);
+        return branch != null ? branch.commit() : findCommit(rev);
+    }
+
+    /** Displays information about all commits ever made, other than those
+     * holding stashed changes. */
+    private void globalLog() {
+        for (ObjectId sha : messages.keySet()) {
+            Commit commit = commits.get(sha);
+            ObjectId commitsha = commit.sha();
+            String time = commit.time();
+            String message = commit.message();
+            System.out.println("===");
+            System.out.println("Commit " + commitsha);
+            System.out.println(time);
+            System.out.println(message);
+            System.out.println();
+        }
+    }
+
+    /** Prints out the ids of all commits that have the given commit message.
+     * @param message The commit message.
+     */
+    private  void find(String message) {
+        if (message == null || !messages.containsValue(message)) {
+            error("Found no commit with that message.");
+            return;
+        }
+        for (ObjectId sha : messages.keySet()) {
+            if (messages.get(sha).equals(message)) {
+                System.out.println(sha);
+            }
+        }
+    }
+
+    /** Returns true iff the file with the given fileName in working directory
+     * has similar contents with a file with the same name in head commit.
+     * @param fileName Name of the given file
+     */
+    private boolean notModified(String fileName) {
+        ObjectId id = _head.branchFiles().get(fileName);
+        return id != null
+            && id.equals(ObjectId.hash(Utils.readContents(new File(fileName))));
+    }
+
+    /** Displays what branches currently exist, and marks the current branch
+     * with a *. If THRESHOLD is not negative, staged files that rename or
+     * copy a file with at least THRESHOLD percent similarity are shown with
+     * their sources.
+     * @param threshold Least similarity of a rename, in percent, or -1.
+     */
+    private void status(int threshold) {
+        Repository.Status status = repository().status();
+        Repository.Snapshot snap = status.snapshot();
+        TreeSet<String> rm = new TreeSet<>(snap.removed());
+        Map<String, String> sources = new HashMap<>();
+        if (threshold >= 0) {
+            PathMap<ObjectId> head = _head.branchFiles(), index = index();
+            ObjectStore store = store();
+            for (Renames.Rename r
+                     : new Renames(head, index, index.changes(head),
+                                   p -> store.get(head.get(p)),
+                                   p -> store.get(index.get(p)),
+                                   threshold).renames()) {
+                sources.put(r.to(), (r.copy() ? " (copied from "
+                                     : " (renamed from ") + r.from() + ")");
+                if (!r.copy()) {
+                    rm.remove(r.from());
+                }
+            }
+        }
+        System.out.println("=== Branches ===");
+        for (String branch : snap.branches().keySet()) {
+            if (branch.equals(snap.branch())) {
+                System.out.print("*");
+            }
+            System.out.println(branch);
+        }
+        System.out.println();
+        System.out.println("=== Staged Files ===");
+        for (String stages : snap.staged()) {
+            System.out.println(stages + sources.getOrDefault(stages, ""));
+        }
+        System.out.println();
+        System.out.println("=== Removed Files ===");
+        for (String rmv : rm) {
+            System.out.println(rmv);
+        }
+        System.out.println();
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String del : status.deleted()) {
+            System.out.println(del + " (deleted)");
+        }
+        for (String cha : status.modified()) {
+            System.out.println(cha + " (modified)");
+        }
+        System.out.println();
+        System.out.println("=== Untracked Files ===");
+        for (String file : status.untracked()) {
+            System.out.println(file);
+        }
+    }
+
+    /** Check out for file name.
+     * @param file Name of the file to be checked out in current branch.
+     */
+    private void checkoutF(String file) {
+        repository().checkoutFile(file);
+    }
+
+    /** Checkout file name with commit id.
+     * @param id A unique commit id.
+     * @param file Name of the file to be checked out with the given commit id.
+     */
+    private void checkoutID(String id, String file) {
+        Commit arg = findCommit(id);
+        if (arg == null) {
+            error("No commit with that id exists.");
+            return;
+        }
+        if (!arg.files().containsKey(file)) {
+            error("File does not exist in that commit.");
+            return;
+        }
+        arg.restoreFile(store(), file);
+        saver(gitlet);
+    }
+
+    /** Returns the commit whose id is or starts with ID, or null if there
+     * is none. Abbreviated ids must have at least six digits. ID may also
+     * be REF@{N}, the commit that the branch or HEAD named REF pointed to
+     * N moves ago, as found in its reflog.
+     * @param id A full or abbreviated commit id.
+     */
+    private Commit findCommit(String id) {
+        int at = id.lastIndexOf("@{");
+        if (at >= 0 && id.endsWith("}")) {
+            int n;
+            try {
+                n = Integer.parseInt(id.substring(at + 2, id.length() - 1));
+            } catch (NumberFormatException excp) {
+                return null;
+            }
+            List<Reflog.Entry> moves = reflogOf(id.substring(0, at))
+                .latest(n + 1);
+            return n >= 0 && moves.size() > n && moves.get(n).now() != null
+                ? commits.get(moves.get(n).now()) : null;
+        }
+        ObjectId full = ObjectId.parse(id);
+        if (full != null) {
+            return commits.get(full);
+        }
+        if (id.length() >= 6) {
+            for (ObjectId i : commits.keySet()) {
+                if (i.startsWith(id)) {
+                    return commits.get(i);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Check out for branch name.
+     * @param branch Name of the branch in which all of its associated files
+     * will be checked out.
+     */
+    private void checkoutB(String branch) {
+        repository().checkout(branch);
+    }
+
+    /** Reflog command: prints the moves of REF, the name of a branch or
+     * HEAD, newest first, each with the commit it moved to, or from for a
+     * deletion.
+     * @param ref A branch name or HEAD.
+     */
+    private void reflog(String ref) {
+        List<Reflog.Entry> moves = reflogOf(ref).latest(Integer.MAX_VALUE);
+        if (moves.isEmpty() && !ref.equals("HEAD")
+                && !branches.containsKey(ref)) {
+            error("A branch with that name does not exist.");
+            return;
+        }
+        for (int i = 0; i < moves.size(); i += 1) {
+            Reflog.Entry move = moves.get(i);
+            System.out.println((move.now() != null ? move.now() : move.old())
+                               + " " + ref + "@{" + i + "}: "
+                               + move.message());
+        }
+    }
+
+    /** Returns the reflog of REF: the branch of that name, or the current
+     * working directory's HEAD if REF is HEAD or empty.
+     * @param ref A branch name or HEAD.
+     */
+    private Reflog reflogOf(String ref) {
+        if (!ref.isEmpty() && !ref.equals("HEAD")) {
+            return branches.log(ref);
+        }
+        return new Reflog(new File(new File(stateDir(), "logs"), "HEAD"));
+    }
+
+    /** Returns the directory holding the state private to the current
+     * working directory: .gitlet itself, or the admin directory of a
+     * linked worktree. */
+    private static File stateDir() {
+        return _worktree == null ? gitletDir()
+            : Worktree.adminDir(gitletDir(), _worktree);
+    }
+
+    /** Appends a move to the HEAD log if the current branch or its commit
+     * has changed since the last one recorded. */
+    private void logHead() {
+        ObjectId now = _head == null ? null : _head.commit().sha();
+        if (!Objects.equals(now, _loggedHead)
+                || !Objects.equals(_headName, _loggedHeadName)) {
+            reflogOf("HEAD").append(new Reflog.Entry(_loggedHead, now,
+                System.currentTimeMillis() / 1000, _command));
+            headLogged();
+        }
+    }
+
+    /** Notes the current branch and commit as the last recorded in the
+     * HEAD log. */
+    private void headLogged() {
+        _loggedHead = _head == null ? null : _head.commit().sha();
+        _loggedHeadName = _headName;
+    }
+
+    /** Creates a new branch with the given name, and points it at the current
+     * head node.
+     * @param branch Name of the new branch.
+     */
+    private void branch(String branch) {
+        if (branches.containsKey(branch)) {
+            error("A branch with that name already exists.");
+            return;
+        }
+        branches.put(branch, branches.id(_headName));
+        saveBranches(gitlet);
+    }
+
+    /** Deletes the branch with the given name.
+     * @param branch Name of the branch to be deleted.
+     */
+    private void removeBranch(String branch) {
+        if (!branches.containsKey(branch)) {
+            error("A branch with that name does not exist.");
+            return;
+        } else if (branch.equals(_headName)) {
+            error("Cannot remove the current branch.");
+            return;
+        } else if (repository().checkedOutElsewhere(branch)) {
+            error("That branch is checked out in another "
+                    + "worktree.");
+            return;
+        }
+        branches.remove(branch);
+        saveBranches(gitlet);
+    }
+
+    /** Checks out all the files tracked by the given commit.
+     * And moves the current branch's head to that commit node.
+     * @param id A unique commit id.
+     */
+    private void reset(String id) {
+        Commit commit = findCommit(id);
+        if (commit == null) {
+            error("No commit with that id exists.");
+            return;
+        }
+        repository().switchTo(_headName, commit);
+        saver(gitlet);
+    }
+
+    /** Merge command: merges the files of a given branch into the current
+     * branch. The merged files are computed from stored blobs; only the
+     * files that change are then written to the working directory. With
+     * --no-checkout, merges the given branch into another branch without
+     * reading or writing any working file. With -M[N], files that either
+     * side renamed with at least N percent similarity are followed.
+     * @param args User's input: merge [-M[N]] BRANCH, or merge [-M[N]]
+     * --no-checkout BRANCH INTO.
+     */
+    private void merge(String... args) {
+        int threshold = Renames.threshold(args[1]);
+        int i = threshold >= 0 ? 2 : 1;
+        if (args[i].equals("--no-checkout")) {
+            mergeNoCheckout(args[i + 1], args[i + 2], threshold);
+            return;
+        }
+        switch (repository().merge(args[i], threshold).outcome()) {
+        case UP_TO_DATE:
+            System.out.println("Given branch is an ancestor of the "
+                    + "current branch.");
+            break;
+        case FAST_FORWARD:
+            System.out.println("Current branch fast-forwarded.");
+            break;
+        case CONFLICTED:
+            error("Encountered a merge conflict.");
+            break;
+        default:
+            break;
+        }
+    }
+
+    /** Merges BRANCH into the branch INTO, which is not checked out, and
+     * makes the merged commit the head of INTO. Nothing in the working
+     * directory or staging area is read or changed. If the merge
+     * conflicts, the conflicting files are listed and nothing is changed.
+     * @param branch Name of the given branch.
+     * @param into Name of the branch that receives the merge.
+     * @param threshold Least similarity of a rename, in percent, or -1.
+     */
+    private void mergeNoCheckout(String branch, String into, int threshold) {
+        if (!branches.containsKey(branch) || !branches.containsKey(into)) {
+            error("A branch with that name does not exist.");
+            return;
+        } else if (branch.equals(into)) {
+            error("Cannot merge a branch with itself.");
+            return;
+        } else if (into.equals(_headName)
+                   || repository().checkedOutElsewhere(into)) {
+            error("Cannot merge into a checked-out branch "
+                    + "without a checkout.");
+            return;
+        }
+        Commit given = branches.get(branch).commit();
+        Commit target = branches.get(into).commit();
+        Commit sp = split(into, branch);
+        if (sp == null) {
+            error("Given branch has no common ancestor "
+                    + "with the current branch.");
+            return;
+        } else if (sp.sha().equals(given.sha())) {
+            System.out.println("Given branch is an ancestor of the "
+                    + "current branch.");
+            return;
+        } else if (sp.sha().equals(target.sha())) {
+            branches.put(into, new Branch(into, given));
+            saveBranches(gitlet);
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
+        Merge merge = new Merge(sp.files(), target.files(), given.files(),
+                                store(), threshold);
+        if (!merge.conflicts().isEmpty()) {
+            error("Encountered a merge conflict.");
+            for (String path : merge.conflicts()) {
+                System.out.println(path);
+            }
+            return;
+        }
+        Commit commit = newCommit("Merged " + into + " with " + branch + ".",
+                                  target, merge.result(), merge.changed());
+        branches.put(into, new Branch(into, commit));
+        saver(gitlet);
+    }
+
+    /** Cherry-pick command: applies the changes that the commit ID made to
+     * its parent on top of the current head, as a new commit with the same
+     * message. The changes are merged in from stored blobs, as by merge.
+     * @param id A commit id.
+     */
+    private void cherryPick(String id) {
+        Commit commit = findCommit(id);
+        if (commit == null) {
+            error("No commit with that id exists.");
+            return;
+        } else if (!stagedFiles.isEmpty() || !removed.isEmpty()) {
+            error("You have uncommitted changes.");
+            return;
+        }
+        Commit parent = commits.get(commit.psha());
+        Merge merge = new Merge(parent == null ? PathMap.empty()
+                                : parent.files(),
+                                _head.branchFiles(), commit.files(), store());
+        if (merge.changed().isEmpty()) {
+            error("No changes added to the commit.");
+            return;
+        }
+        if (!repository().apply(merge)) {
+            error("Encountered a merge conflict.");
+            saver(gitlet);
+            return;
+        }
+        stagedFiles.clear();
+        removed.clear();
+        advance(newCommit(commit.message(), _head.commit(), merge.result(),
+                          merge.changed()));
+    }
+
+    /** Records and returns a new commit with MESSAGE on top of PARENT,
+     * whose blob map is BLOBS, in which the paths CHANGED may differ from
+     * PARENT's.
+     * @param message The commit message.
+     * @param parent The parent commit.
+     * @param blobs The blob map of the new commit.
+     * @param changed Paths that may differ from the parent.
+     */
+    Commit newCommit(String message, Commit parent,
+                     PathMap<ObjectId> blobs, Collection<String> changed) {
+        Commit commit = new Commit(message, parent, blobs, changed, time());
+        messages.put(commit.sha(), message);
+        commits.put(commit.sha(), commit);
+        return commit;
+    }
+
+    /** Records and returns a commit of stashed changes, as newCommit does,
+     * but without its message, so that global-log and find never show it.
+     * @param message The commit message.
+     * @param parent The parent commit.
+     * @param blobs The blob map of the new commit.
+     * @param changed Paths that may differ from the parent.
+     */
+    private Commit stashCommit(String message, Commit parent,
+                               PathMap<ObjectId> blobs,
+                               Collection<String> changed) {
+        Commit commit = new Commit(message, parent, blobs, changed, time());
+        commits.put(commit.sha(), commit);
+        return commit;
+    }
+
+    /** Makes COMMIT the head of the current branch and saves.
+     * @param commit A commit whose parent is the current head.
+     */
+    private void advance(Commit commit) {
+        branches.put(_headName, new Branch(_headName, commit));
+        _head = branches.get(_headName);
+        saver(gitlet);
+    }
+
+    /** Bisect command: finds the commit that first made the history bad.
+     * Bisect start [BAD [GOOD...]] begins, bisect good, bad or skip
+     * [COMMIT] marks a commit, by default the one checked out, bisect run
+     * SCRIPT [ARGS...] marks commits by the exit status of SCRIPT, and
+     * bisect reset returns to the branch the bisection started from.
+     * Commits under test are checked out on a temporary branch named
+     * bisect.
+     * @param args User's input.
+     */
+    private void bisect(String... args) {
+        Bisect bisect = new Bisect(new File(stateDir(), "BISECT"));
+        if (!args[1].equals("start") && !bisect.active()) {
+            error("Not bisecting.");
+            return;
+        }
+        switch (args[1]) {
+        case "start":
+            if (bisect.active()) {
+                error("Already bisecting; use bisect reset "
+                        + "first.");
+                return;
+            } else if (!stagedFiles.isEmpty() || !removed.isEmpty()) {
+                error("You have uncommitted changes.");
+                return;
+            } else if (branches.containsKey(BISECT_BRANCH)) {
+                error("A branch named " + BISECT_BRANCH
+                        + " already exists.");
+                return;
+            }
+            bisect.start(_headName);
+            for (int i = 2; i < args.length; i += 1) {
+                if (!bisectMark(bisect, i == 2 ? "bad" : "good", args[i])) {
+                    return;
+                }
+            }
+            bisect.save();
+            bisectStep(bisect);
+            break;
+        case "good": case "bad": case "skip":
+            if (bisectMark(bisect, args[1],
+                           args.length == 3 ? args[2] : null)) {
+                bisect.save();
+                bisectStep(bisect);
+            }
+            break;
+        case "run":
+            bisectRun(bisect, Arrays.copyOfRange(args, 2, args.length));
+            break;
+        case "reset":
+            bisectReset(bisect);
+            break;
+        default:
+            error("Incorrect operands.");
+            break;
+        }
+    }
+
+    /** Marks commit ID, or the current head if ID is null, as TERM in
+     * BISECT. Returns false if there is no such commit.
+     * @param bisect The bisection.
+     * @param term One of good, bad and skip.
+     * @param id A commit id, or null.
+     */
+    private boolean bisectMark(Bisect bisect, String term, String id) {
+        Commit commit = id == null ? _head.commit() : resolve(id);
+        if (commit == null) {
+            error("No commit with that id exists.");
+            return false;
+        }
+        bisect.mark(term, commit.sha());
+        return true;
+    }
+
+    /** Checks out the next commit for BISECT to test, on the bisect
+     * branch, or reports the first bad commit if it is known. Returns true
+     * iff a commit was checked out.
+     * @param bisect The bisection.
+     */
+    private boolean bisectStep(Bisect bisect) {
+        if (bisect.bad() == null || !bisect.hasGood()) {
+            System.out.println("Waiting for both good and bad commits.");
+            return false;
+        }
+        List<Commit> candidates = bisect.candidates(commits::get);
+        int i = bisect.next(candidates);
+        if (i < 0 && candidates.size() <= 1) {
+            Commit bad = candidates.isEmpty() ? commits.get(bisect.bad())
+                : candidates.get(0);
+            System.out.println(bad.sha() + " is the first bad commit.");
+            System.out.println(bad.message());
+            return false;
+        } else if (i < 0) {
+            System.out.println("There are only skipped commits left to "
+                    + "test. The first bad commit could be any of:");
+            for (Commit c : candidates) {
+                System.out.println(c.sha());
+            }
+            return false;
+        }
+        Commit next = candidates.get(i);
+        int left = Math.max(i, candidates.size() - i) - 1;
+        try {
+            repository().switchTo(BISECT_BRANCH, next);
+        } catch (GitletException excp) {
+            error(excp.getMessage());
+            return false;
+        }
+        saver(gitlet);
+        System.out.println("Bisecting: " + left + " revisions left to test "
+                + "after this (roughly "
+                + (32 - Integer.numberOfLeadingZeros(left)) + " steps)");
+        System.out.println("[" + next.sha() + "] " + next.message());
+        return true;
+    }
+
+    /** Runs the command SCRIPT in the working directory on each commit
+     * that BISECT checks out, marking the commit good if it exits with 0,
+     * skipping it if it exits with 125 and marking it bad if it exits with
+     * any other status below 128, until the first bad commit is found.
+     * @param bisect The bisection.
+     * @param script A command and its arguments.
+     */
+    private void bisectRun(Bisect bisect, String... script) {
+        if (script.length == 0) {
+            error("Incorrect operands.");
+            return;
+        } else if (!_headName.equals(BISECT_BRANCH) && !bisectStep(bisect)) {
+            return;
+        }
+        while (true) {
+            flush();
+            System.out.flush();
+            int status;
+            try {
+                status = new ProcessBuilder(script).inheritIO().start()
+                    .waitFor();
+            } catch (IOException | InterruptedException excp) {
+                error("Could not run " + script[0] + ".");
+                return;
+            }
+            if (status < 0 || status >= 128) {
+                error("bisect run failed: " + script[0]
+                        + " exited with " + status + ".");
+                return;
+            }
+            bisect.mark(status == 0 ? "good" : status == 125 ? "skip"
+                        : "bad", _head.commit().sha());
+            bisect.save();
+            if (!bisectStep(bisect)) {
+                return;
+            }
+        }
+    }
+
+    /** Ends BISECT, returning to the branch it started from.
+     * @param bisect The bisection.
+     */
+    private void bisectReset(Bisect bisect) {
+        String branch = bisect.branch();
+        if (!branches.containsKey(branch)) {
+            error("No such branch exists.");
+            return;
+        }
+        repository().switchTo(branch, branches.get(branch).commit());
+        bisect.clear();
+        if (branches.containsKey(BISECT_BRANCH)) {
+            branches.remove(BISECT_BRANCH);
+            repository().release(BISECT_BRANCH);
+        }
+        saver(gitlet);
+    }
+
+    /** Stash command: stash [push [MESSAGE]] saves the staging area and
+     * the changes to tracked working files as commits and returns those
+     * files to the head commit's versions, stash pop [stash@{N}] reapplies
+     * an entry by a three-way merge and drops it, stash list lists the
+     * entries and stash drop [stash@{N}] discards one. Only the files that
+     * differ from the head commit are stored or rewritten.
+     * @param args User's input.
+     */
+    private void stash(String... args) {
+        Stash stash = stashList();
+        String op = args.length == 1 ? "push" : args[1];
+        switch (op) {
+        case "push":
+            stashPush(stash, args.length == 3 ? args[2] : null);
+            break;
+        case "list":
+            for (int i = 0; i < stash.entries().size(); i += 1) {
+                System.out.println("stash@{" + i + "}: "
+                        + commits.get(stash.entries().get(i)).message());
+            }
+            break;
+        case "pop": case "drop":
+            int n = args.length == 3 ? stash.index(args[2]) : 0;
+            if (stash.entries().isEmpty()) {
+                error("No stash entries found.");
+                return;
+            } else if (n < 0) {
+                error("No such stash entry.");
+                return;
+            } else if (op.equals("pop")
+                       && !stashApply(commits.get(stash.entries().get(n)))) {
+                return;
+            }
+            ObjectId id = stash.drop(n);
+            stash.save();
+            System.out.println("Dropped stash@{" + n + "} (" + id + ")");
+            break;
+        default:
+            error("Incorrect operands.");
+            break;
+        }
+    }
+
+    /** Returns the repository's stash. */
+    private Stash stashList() {
+        return new Stash(new File(gitletDir(), "stash"));
+    }
+
+    /** Records the staging area and the tracked working files as a new
+     * entry of STASH, described by MESSAGE or, if it is null, by the head
+     * commit's message, and returns the changed files to the head commit's
+     * versions. The entry and its commits are saved before any file is
+     * reverted, so that the changes are never held only in memory.
+     * @param stash The stash.
+     * @param message Description of the entry, or null.
+     */
+    private void stashPush(Stash stash, String message) {
+        PathMap<ObjectId> head = _head.branchFiles();
+        PathMap<ObjectId> index = index();
+        PathMap<ObjectId> work = workingTree(index, index);
+        SortedSet<String> staged = index.changes(head);
+        SortedSet<String> modified = work.changes(index);
+        if (staged.isEmpty() && modified.isEmpty()) {
+            error("No local changes to save.");
+            return;
+        }
+        ObjectStore store = store();
+        for (String path : modified) {
+            if (work.get(path) != null) {
+                store.put(Utils.readContents(new File(path)));
+            }
+        }
+        String headMessage = _head.commit().message();
+        String desc = message == null
+            ? "WIP on " + _headName + ": " + headMessage
+            : "On " + _headName + ": " + message;
+        Commit indexCommit = stashCommit("index on " + _headName + ": "
+                                         + headMessage, _head.commit(),
+                                         index, staged);
+        Commit workCommit = stashCommit(desc, indexCommit, work, modified);
+        write(gitlet);
+        stash.push(workCommit.sha());
+        stash.save();
+        TreeSet<String> dirty = new TreeSet<>(staged);
+        dirty.addAll(modified);
+        for (String path : dirty) {
+            ObjectId id = head.get(path);
+            if (id == null) {
+                deleteFile(path);
+            } else if (repository().materialized(path)) {
+                store.copyTo(id, new File(path));
+            }
+        }
+        stagedFiles.clear();
+        removed.clear();
+        saver(gitlet);
+        System.out.println("Saved working directory and index state "
+                + desc);
+    }
+
+    /** Reapplies the stash entry WORK to the current head by a three-way
+     * merge from the commit it was made on. Files that were staged when it
+     * was made, and files new to the head, are staged again. Returns true
+     * iff it applied without conflicts. Nothing is changed if the staging
+     * area is not empty or a working file in the way has changes.
+     * @param work A stash commit.
+     */
+    private boolean stashApply(Commit work) {
+        if (!stagedFiles.isEmpty() || !removed.isEmpty()) {
+            error("You have uncommitted changes.");
+            return false;
+        }
+        PathMap<ObjectId> staged = commits.get(work.psha()).files();
+        PathMap<ObjectId> base = commits.get(commits.get(work.psha())
+                                             .psha()).files();
+        PathMap<ObjectId> head = _head.branchFiles();
+        Merge merge = new Merge(base, head, work.files(), store());
+        for (String path : merge.changed()) {
+            File file = new File(path);
+            if (!head.containsKey(path) && file.exists()) {
+                error("There is an untracked file in the way; "
+                        + "delete it or add it first.");
+                return false;
+            } else if (head.containsKey(path)
+                       && repository().materialized(path)
+                       && (!file.isFile() || !notModified(path))) {
+                error("Your local changes to " + path
+                        + " would be overwritten.");
+                return false;
+            }
+        }
+        ObjectStore store = store();
+        Set<String> conflicts = new HashSet<>(merge.conflicts());
+        for (String path : merge.changed()) {
+            ObjectId id = merge.result().get(path);
+            boolean wasStaged = !Objects.equals(staged.get(path),
+                                                base.get(path));
+            if (id == null) {
+                deleteFile(path);
+                if (wasStaged) {
+                    removed.add(path);
+                }
+            } else {
+                if (conflicts.contains(path)
+                        || repository().materialized(path)) {
+                    store.copyTo(id, new File(path));
+                }
+                if (!conflicts.contains(path)
+                        && (wasStaged || !head.containsKey(path))) {
+                    stagedFiles.put(path, id);
+                }
+            }
+        }
+        saver(gitlet);
+        if (!conflicts.isEmpty()) {
+            error("Encountered a merge conflict.");
+            return false;
+        }
+        return true;
+    }
+
+    /** Stores the current contents of the working file NAME and stages
+     * them.
+     * @param name Name of the file.
+     */
+    private void stage(String name) {
+        stagedFiles.put(name, store().put(Utils.readContents(new File(name))));
+    }
+
+    /** Returns the store holding this repository's blobs. */
+    private ObjectStore store() {
+        if (_store == null) {
+            _store = storeAt(_root);
+        }
+        return _store;
+    }
+
+    /** Returns this working directory's repository, through which the
+     * commands that read or write working files run. It is made once per
+     * command, and saves as the other commands do. */
+    private Repository repository() {
+        if (_repo == null) {
+            _repo = new Repository(new File("."), gitletDir(), stateDir(),
+                                   _worktree, this, store(),
+                                   () -> saver(gitlet));
+        }
+        return _repo;
+    }
+
+    /** Sparse-checkout command: set, list or disable the patterns that
+     * choose which tracked files are materialized in this working
+     * directory. After set or disable, files newly included are written
+     * and unmodified files newly excluded are deleted.
+     * @param args User's input.
+     */
+    private void sparseCheckout(String... args) {
+        File file = sparseFile();
+        switch (args[1]) {
+        case "list":
+            if (file.isFile()) {
+                System.out.print(new String(Utils.readContents(file),
+                                            StandardCharsets.UTF_8));
+            }
+            return;
+        case "set":
+            StringBuilder text = new StringBuilder();
+            for (int i = 2; i < args.length; i += 1) {
+                text.append(args[i]).append("\n");
+            }
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file,
+                text.toString().getBytes(StandardCharsets.UTF_8));
+            break;
+        default:
+            file.delete();
+            break;
+        }
+        _repo = null;
+        ObjectStore store = store();
+        for (Map.Entry<String, ObjectId> e : index().entrySet()) {
+            File f = new File(e.getKey());
+            if (repository().materialized(e.getKey())) {
+                if (!f.exists()) {
+                    store.copyTo(e.getValue(), f);
+                }
+            } else if (f.isFile() && e.getValue().equals(
+                           ObjectId.hash(Utils.readContents(f)))) {
+                deleteFile(e.getKey());
+            }
+        }
+    }
+
+    /** Worktree command: add, list or remove linked worktrees.
+     * @param args User's input.
+     */
+    private void worktree(String... args) {
+        switch (args[1]) {
+        case "add":
+            worktreeAdd(args[2], args[3]);
+            break;
+        case "list":
+            worktreeList();
+            break;
+        default:
+            worktreeRemove(args[2]);
+            break;
+        }
+    }
+
+    /** Creates the directory PATH as a new linked worktree with BRANCH
+     * checked out. It shares this repository's commits, branches and
+     * blobs, and has its own current branch and staging area.
+     * @param path Directory of the new worktree.
+     * @param branch Name of a branch not checked out in any worktree.
+     */
+    private void worktreeAdd(String path, String branch) {
+        File dir = new File(path);
+        String[] present = dir.list();
+        if (!branches.containsKey(branch)) {
+            error("No such branch exists.");
+            return;
+        } else if (dir.isFile() || present != null && present.length > 0) {
+            error("Destination directory is not empty.");
+            return;
+        }
+        String base = dir.getAbsoluteFile().toPath().normalize()
+            .getFileName().toString();
+        String name = base;
+        for (int i = 1; Worktree.adminDir(gitletDir(), name).exists();
+             i += 1) {
+            name = base + i;
+        }
+        if (branch.equals(_headName)
+                || repository().checkedOutElsewhere(branch)
+                || !Worktree.lock(gitletDir(), branch, name)) {
+            error("That branch is checked out in another "
+                    + "worktree.");
+            return;
+        }
+        dir.mkdirs();
+        String root = _root.getAbsoluteFile().toPath().normalize().toString();
+        Utils.writeContents(new File(dir, ".gitlet"),
+            (root + "\n" + name + "\n").getBytes(StandardCharsets.UTF_8));
+        new Worktree(dir.getAbsoluteFile().toPath().normalize().toString(),
+                     branch, new HashMap<>(), new HashSet<>())
+            .save(Worktree.adminDir(gitletDir(), name));
+        ObjectStore store = store();
+        for (Map.Entry<String, ObjectId> e
+                 : branches.get(branch).branchFiles().entrySet()) {
+            store.copyTo(e.getValue(), new File(dir, e.getKey()));
+        }
+    }
+
+    /** Prints the main working directory and each linked worktree, with
+     * the branch checked out in it. */
+    private void worktreeList() {
+        Worktree main = _worktree == null ? checkoutState(_root) : _main;
+        System.out.println(main.path() + " [" + main.branch() + "]");
+        for (Worktree w : linkedWorktrees().values()) {
+            System.out.println(w.path() + " [" + w.branch() + "]");
+        }
+    }
+
+    /** Detaches the linked worktree in the directory PATH from this
+     * repository and releases its branch. Its files are left in place.
+     * @param path Directory of a linked worktree.
+     */
+    private void worktreeRemove(String path) {
+        String full = new File(path).getAbsoluteFile().toPath().normalize()
+            .toString();
+        for (Map.Entry<String, Worktree> e : linkedWorktrees().entrySet()) {
+            if (!e.getValue().path().equals(full)) {
+                continue;
+            } else if (e.getKey().equals(_worktree)) {
+                error("Cannot remove the current worktree.");
+                return;
+            }
+            File admin = Worktree.adminDir(gitletDir(), e.getKey());
+            Worktree.unlock(gitletDir(), e.getValue().branch(), e.getKey());
+            for (File f : admin.listFiles()) {
+                f.delete();
+            }
+            admin.delete();
+            new File(full, ".gitlet").delete();
+            return;
+        }
+        error("No such worktree exists.");
+    }
+
+    /** Returns the state of each linked worktree, by name. */
+    private static TreeMap<String, Worktree> linkedWorktrees() {
+        TreeMap<String, Worktree> result = new TreeMap<>();
+        File[] dirs = new File(gitletDir(), "worktrees").listFiles();
+        if (dirs != null) {
+            for (File admin : dirs) {
+                Worktree w = Worktree.load(admin);
+                if (w != null) {
+                    result.put(admin.getName(), w);
+                }
+            }
+        }
+        return result;
     }
 
-    /** Check out for branch name.
-     * @param branch Name of the branch in which all of its associated files
-     * will be checked out.
+    /** Creates a copy of the repository whose working directory is SOURCE
+     * in the new directory DEST, with the same branches and current
+     * branch, and checks out its head there. SOURCE is remembered as the
+     * remote named origin. A SHARED copy lists SOURCE's blob store as an
+     * alternate instead of copying its blobs. The copy is hashed with
+     * SOURCE's algorithm, and the algorithm of this repository is restored
+     * afterwards. A batch run in a repository refuses to clone one that
+     * uses another algorithm.
+     * @param source Working directory of an existing repository.
+     * @param dest Directory of the copy.
+     * @param shared True iff the copy borrows SOURCE's blobs.
      */
-    private void checkoutB(String branch) {
-        if (!branches.containsKey(branch)) {
-            System.out.println("No such branch exists.");
+    private void cloneRepo(String source, String dest, boolean shared) {
+        File srcDir = repoDir(source);
+        Main src = load(new File(srcDir, "gitlet.ser"));
+        File destDir = new File(dest);
+        String[] present = destDir.list();
+        if (src == null) {
+            error("Remote directory not found.");
             return;
-        } else if (branch.equals(_headName)) {
-            System.out.println("No need to checkout the current branch.");
+        } else if (destDir.isFile() || present != null && present.length > 0) {
+            error("Destination directory is not empty.");
             return;
         }
-        Branch b = branches.get(branch);
-        File thisDir = new File(".");
-        for (String file : Utils.plainFilenamesIn(thisDir)) {
-            if (b.branchFiles().containsKey(file)
-                    && !_head.branchFiles().containsKey(file)) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it or add it first.");
-                return;
-            }
+        File srcGitlet = new File(srcDir, ".gitlet");
+        HashAlgorithm format = HashAlgorithm.of(srcGitlet);
+        if (_batch && _head != null && format != ObjectId.algorithm()) {
+            error("Remote repository uses a different hash "
+                    + "algorithm.");
+            return;
         }
-        for (String filez : Utils.plainFilenamesIn(thisDir)) {
-            if (_head.branchFiles().containsKey(filez)) {
-                Utils.restrictedDelete(filez);
+        new File(destDir, ".gitlet").mkdirs();
+        format.record(new File(destDir, ".gitlet"));
+        HashAlgorithm previous = ObjectId.algorithm();
+        ObjectId.use(format);
+        try {
+            if (shared) {
+                storeAt(destDir).addAlternate(new File(srcGitlet, "blobs"));
             }
+            Main copy = new Main();
+            copy.branches.reason("clone from " + srcDir.getAbsolutePath());
+            List<Commit> tips = new ArrayList<>();
+            for (Branch b : src.branches.values()) {
+                tips.add(b.commit());
+            }
+            transfer(src, srcDir, copy, destDir, tips);
+            for (Branch b : src.branches.values()) {
+                copy.branches.put(b.name(), new Branch(b.name(),
+                    copy.commits.get(b.commit().sha())));
+            }
+            copy._headName = src._headName;
+            copy._head = copy.branches.get(copy._headName);
+            copy.remotes.put("origin", srcDir.getAbsolutePath());
+            ObjectStore store = storeAt(destDir);
+            for (Map.Entry<String, ObjectId> e
+                     : copy._head.branchFiles().entrySet()) {
+                store.copyTo(e.getValue(), new File(destDir, e.getKey()));
+            }
+            write(copy, new File(destDir, "gitlet.ser"));
+        } finally {
+            ObjectId.use(previous);
         }
-        b.commit().restore();
-        _headName = branch;
-        _head = branches.get(branch);
-        staged.clear();
-        stagedFiles.clear();
-        saver(gitlet);
     }
 
-    /** Creates a new branch with the given name, and points it at the current
-     * head node.
-     * @param branch Name of the new branch.
+    /** Remembers the repository whose working directory is DIR as the
+     * remote NAME.
+     * @param name Name of the new remote.
+     * @param dir Working directory, or .gitlet directory, of the remote.
      */
-    private void branch(String branch) {
-        if (branches.containsKey(branch)) {
-            System.out.println("A branch with that name already exists.");
+    private void addRemote(String name, String dir) {
+        if (remotes.containsKey(name)) {
+            error("A remote with that name already exists.");
             return;
         }
-        Branch b = new Branch(branch, _head.commit());
-        branches.put(branch, b);
+        remotes.put(name, repoDir(dir).getAbsolutePath());
         saver(gitlet);
     }
 
-    /** Deletes the branch with the given name.
-     * @param branch Name of the branch to be deleted.
+    /** Forgets the remote NAME.
+     * @param name Name of a remote.
      */
-    private void removeBranch(String branch) {
-        if (!branches.containsKey(branch)) {
-            System.out.println("A branch with that name does not exist.");
-            return;
-        } else if (branch.equals(_headName)) {
-            System.out.println("Cannot remove the current branch.");
+    private void removeRemote(String name) {
+        if (remotes.remove(name) == null) {
+            error("A remote with that name does not exist.");
             return;
         }
-        branches.remove(branch);
         saver(gitlet);
     }
 
-    /** Checks out all the files tracked by the given commit.
-     * And moves the current branch's head to that commit node.
-     * @param id A unique commit id.
+    /** Copies the commits and blobs of BRANCH in the remote REMOTE that
+     * this repository lacks, and points the branch REMOTE/BRANCH at the
+     * head of BRANCH.
+     * @param remote Name of a remote.
+     * @param branch Name of a branch in the remote.
      */
-    private void reset(String id) {
-        boolean exit = true;
-        if (id.length() >= 6) {
-            for (String i : commits.keySet()) {
-                if (i.substring(0, 6).equals(id.substring(0, 6))) {
-                    exit = false;
-                    Commit commit = commits.get(i);
-                    File thisDir = new File(".");
-                    for (String file : Utils.plainFilenamesIn(thisDir)) {
-                        if (commit.files().keySet().contains(file)
-                              && !_head.branchFiles().keySet().contains(file)) {
-                            System.out.println("There is an untracked file in "
-                                    + "the way; delete it or add it first.");
-                            return;
-                        }
-                    }
-                    for (String filez : Utils.plainFilenamesIn(thisDir)) {
-                        if (_head.branchFiles().containsKey(filez)) {
-                            Utils.restrictedDelete(filez);
-                        }
-                    }
-                    Branch res = new Branch(_headName, commit);
-                    res.commit().restore();
-                    branches.put(_headName, res);
-                    _head = branches.get(_headName);
-                    break;
-                }
-            }
-        }
-        if (exit) {
-            System.out.println("No commit with that id exists.");
+    private void fetch(String remote, String branch) {
+        File dir = remoteDir(remote);
+        Main other = load(new File(dir, "gitlet.ser"));
+        if (other == null) {
+            error("Remote directory not found.");
+            return;
+        } else if (!sameFormat(dir)) {
+            return;
+        } else if (!other.branches.containsKey(branch)) {
+            error("That remote does not have that branch.");
             return;
         }
-        staged.clear();
-        stagedFiles.clear();
+        Commit tip = other.branches.get(branch).commit();
+        transfer(other, dir, this, _root,
+                 Collections.singletonList(tip));
+        String name = remote + "/" + branch;
+        branches.put(name, new Branch(name, commits.get(tip.sha())));
         saver(gitlet);
     }
 
-    /** Merge's failure cases.
-     * @param branch Name of the given branch in merge
+    /** Copies the commits and blobs of the current head that the remote
+     * REMOTE lacks, and points its BRANCH at the current head. The head
+     * of BRANCH must be in the history of the current head. If BRANCH is
+     * the remote's current branch, the remote is reset to its new head.
+     * @param remote Name of a remote.
+     * @param branch Name of a branch in the remote, created if needed.
      */
-    private void failMerge(String branch) {
-        if (!branches.containsKey(branch)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+    private void push(String remote, String branch) {
+        File dir = remoteDir(remote);
+        Main other = load(new File(dir, "gitlet.ser"));
+        if (other == null) {
+            error("Remote directory not found.");
+            return;
+        } else if (!sameFormat(dir)) {
+            return;
         }
-
-        if (!staged.isEmpty() || !removed.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+        Branch theirs = other.branches.get(branch);
+        if (theirs != null && !isAncestor(theirs.commit().sha(),
+                                          _head.commit())) {
+            error("Please pull down remote changes before "
+                    + "pushing.");
+            return;
+        } else if (branch.equals(other._headName)
+                   && !unchanged(other, dir, _head.branchFiles())) {
+            error("The remote has uncommitted changes to its "
+                    + "checked-out branch.");
+            return;
         }
-
-        File thisDir = new File(".");
-        for (String file : Utils.plainFilenamesIn(thisDir)) {
-            if (branches.get(branch).branchFiles().containsKey(file)
-                    && !_head.branchFiles().containsKey(file)) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it or add it first.");
-                System.exit(0);
+        Commit tip = _head.commit();
+        transfer(this, _root, other, dir,
+                 Collections.singletonList(tip));
+        other.branches.reason("push from "
+                              + _root.getAbsoluteFile().toPath().normalize());
+        other.branches.put(branch,
+            new Branch(branch, other.commits.get(tip.sha())));
+        if (branch.equals(other._headName)) {
+            PathMap<ObjectId> old = other._head.branchFiles();
+            other._head = other.branches.get(branch);
+            PathMap<ObjectId> now = other._head.branchFiles();
+            ObjectStore store = storeAt(dir);
+            for (String path : now.changes(old)) {
+                File file = new File(dir, path);
+                if (now.containsKey(path)) {
+                    store.copyTo(now.get(path), file);
+                } else {
+                    file.delete();
+                }
             }
+            other.stagedFiles.clear();
+            other.removed.clear();
         }
+        write(other, new File(dir, "gitlet.ser"));
+    }
 
-
-        if (_headName.equals(branch)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
-        }
-
-        Commit sp = split(_headName, branch);
-        if (sp.sha().equals(branches.get(branch).commit().sha())) {
-            System.out.println("Given branch is an ancestor of the "
-                    + "current branch.");
-            System.exit(0);
+    /** Returns true iff nothing is staged in REPO, the repository in DIR,
+     * and none of the working files that checking out FILES there would
+     * write or delete holds anything but the contents REPO's head gives
+     * it. Files that are missing, such as those outside a sparse
+     * checkout, lose nothing.
+     * @param repo A repository.
+     * @param dir Working directory of REPO.
+     * @param files The files of the commit to be checked out in DIR.
+     */
+    private static boolean unchanged(Main repo, File dir,
+                                     PathMap<ObjectId> files) {
+        if (!repo.stagedFiles.isEmpty() || !repo.removed.isEmpty()) {
+            return false;
         }
-        if (sp.sha().equals(_head.commit().sha())) {
-            _head = branches.get(branch);
-            System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
+        PathMap<ObjectId> old = repo._head.branchFiles();
+        for (String path : files.changes(old)) {
+            File file = new File(dir, path);
+            if (file.isFile() && !ObjectId.hash(Utils.readContents(file))
+                    .equals(old.get(path))) {
+                return false;
+            }
         }
+        return true;
     }
 
-
-    /** Header for file writing. */
-    private String header = "<<<<<<< HEAD";
-    /** Body for file writing. */
-    private String b2 = "=======";
-    /** Tail for file writing. */
-    private String tail = ">>>>>>>";
-
-
-    /** Merges files from the given branch into the current branch.
-     * @param branch Name of the branch in which its files will be merged
-     * to the current branch.
-     */
-    private void merge(String branch) {
-        failMerge(branch);
-        mergeHelper(branch);
-        mergeHelperX(branch);
-        Commit sp = split(_headName, branch);
-        Branch given = branches.get(branch);
-        Branch head = branches.get(_headName);
-        Map<String, String> split = sp.files();
-        Map<String, String> infiles = given.branchFiles();
-        Map<String, String> currfiles = head.branchFiles();
-        for (String merg : infiles.keySet()) {
-            if (!split.keySet().contains(merg)
-                    && !currfiles.keySet().contains(merg)) {
-                File f1 = new File(infiles.get(merg) + "/" + merg);
-                byte[] giver = Utils.readContents(f1);
-                File fl2 = new File(merg);
-                Utils.writeContents(fl2, giver);
-                staged.add(merg);
-            } else if (split.keySet().contains(merg)
-                    && !currfiles.keySet().contains(merg)) {
-                File f1 = new File(infiles.get(merg) + "/" + merg);
-                File temp = new File(split.get(merg) + "/" + merg);
-                File f2 = new File(currfiles.get(merg) + "/" + merg);
-                if (f1.isFile() && temp.isFile() && f2.isFile()) {
-                    byte[] giver = Utils.readContents(f1);
-                    byte[] splitter = Utils.readContents(temp);
-                    if (!Arrays.equals(giver, splitter)) {
-                        _bool = true;
-                        File fl = new File(merg);
-                        String con2 = new String(giver);
-                        header = header.concat("\n"  + b2 + "\n" + con2
-                                + "\n" + tail + "\n");
-                        byte[] stuff = header.getBytes();
-                        Utils.writeContents(fl, stuff);
-                    }
-                }
+    /** Returns true iff the commit ID is COMMIT or one of its ancestors.
+     * @param id A commit id.
+     * @param commit A commit in this repository.
+     */
+    private boolean isAncestor(ObjectId id, Commit commit) {
+        for (Commit c = commit; c != null; c = commits.get(c.psha())) {
+            if (c.sha().equals(id)) {
+                return true;
             }
         }
-        if (bool()) {
-            System.out.println("Encountered a merge conflict.");
-            System.exit(0);
+        return false;
+    }
 
-        } else {
-            commit("Merged " + _headName + " with " + branch + ".");
-        }
-    }
-
-    /** Return bool for merge. */
-    public Boolean bool() {
-        return _bool;
-    }
-
-    /** Boolean for merge. */
-    private Boolean _bool = false;
-
-    /** Helper for merge.
-     * @param branch Name of the branch in which its files will be merged
-     * to the current branch.
-     */
-    public void mergeHelperX(String branch) {
-        Commit sp = split(_headName, branch);
-        Branch given = branches.get(branch);
-        Branch head = branches.get(_headName);
-        Map<String, String> split = sp.files();
-        Map<String, String> infiles = given.branchFiles();
-        Map<String, String> currfiles = head.branchFiles();
-        for (String curr : currfiles.keySet()) {
-            if (split.keySet().contains(curr)
-                    && !infiles.keySet().contains(curr)) {
-                File f2 = new File(currfiles.get(curr) + "/" + curr);
-                File temp = new File(split.get(curr) + "/" + curr);
-                if (f2.isFile() && temp.isFile()) {
-                    byte[] splitter = Utils.readContents(temp);
-                    byte[] current = Utils.readContents(f2);
-                    if (!Arrays.equals(current, splitter)) {
-                        _bool = true;
-                        File fl = new File(curr);
-                        String con1 = new String(current);
-                        header = header.concat("\n" + con1 + "\n" + b2 + "\n"
-                                + tail + "\n");
-                        byte[] stuff = header.getBytes();
-                        Utils.writeContents(fl, stuff);
-                    } else if (Arrays.equals(current, splitter)) {
-                        removed.add(curr);
-                        Utils.restrictedDelete(curr);        
-                    }
-                }
+    /** Sends the commits reachable from TIPS that TO lacks from FROM, the
+     * repository in FROMDIR, to TO, the repository in TODIR, along with
+     * the blobs they introduced that TO's store lacks. The objects travel
+     * as one pack written into TO's .gitlet directory and unpacked there.
+     * @param from The sending repository.
+     * @param fromDir Working directory of FROM.
+     * @param to The receiving repository.
+     * @param toDir Working directory of TO.
+     * @param tips Commits of FROM that TO wants.
+     */
+    private static void transfer(Main from, File fromDir, Main to,
+                                 File toDir, List<Commit> tips) {
+        List<Commit> send =
+            Pack.missing(tips, from.commits::get, to.commits::containsKey);
+        if (send.isEmpty()) {
+            return;
+        }
+        ObjectStore toStore = storeAt(toDir);
+        File pack = new File(new File(toDir, ".gitlet"), "incoming.pack");
+        Pack.write(pack, Pack.blobs(send, from.commits::get, toStore),
+                   storeAt(fromDir), send);
+        try {
+            for (Commit c : Pack.read(pack, toStore)) {
+                to.commits.put(c.sha(), c);
+                to.messages.put(c.sha(), c.message());
             }
+            toStore.sync();
+        } finally {
+            pack.delete();
         }
     }
 
-    /** Helper for merge.
-     * @param branch Name of the branch in which its files will be merged
-     * to the current branch.
-     */
-    public void mergeHelper(String branch) {
-        Commit sp = split(_headName, branch);
-        Branch given = branches.get(branch);
-        Branch head = branches.get(_headName);
-        Map<String, String> split = sp.files();
-        Map<String, String> infiles = given.branchFiles();
-        Map<String, String> currfiles = head.branchFiles();
-        for (String s : split.keySet()) {
-            if (currfiles.keySet().contains(s)
-                    && infiles.keySet().contains(s)) {
-                File f1 = new File(infiles.get(s) + "/" + s);
-                File f2 = new File(currfiles.get(s) + "/" + s);
-                File temp = new File(split.get(s) + "/" + s);
-                byte[] giver = Utils.readContents(f1);
-                byte[] current = Utils.readContents(f2);
-                byte[] splitter = Utils.readContents(temp);
-                if (Arrays.equals(current, splitter)
-                        && !Arrays.equals(giver, splitter)) {
-                    File fl = new File(s);
-                    Utils.writeContents(fl, giver);
-                    staged.add(s);
-                } else if (!Arrays.equals(current, splitter)
-                        && !Arrays.equals(giver, splitter)) {
-                    String con1 = new String(current);
-                    String con2 = new String(giver);
-                    _bool = true;
-                    File fl = new File(s);
-                    header = header.concat("\n" + con1 + "\n" + b2 + "\n"
-                            + con2 + "\n" + tail + "\n");
-                    byte[] stuff = header.getBytes();
-                    Utils.writeContents(fl, stuff);
-                }
-            }
+    /** Returns true iff the repository whose working directory is DIR uses
+     * this repository's hash algorithm, and otherwise says it does not.
+     * @param dir The working directory of another repository.
+     */
+    private static boolean sameFormat(File dir) {
+        if (HashAlgorithm.of(new File(dir, ".gitlet"))
+                == ObjectId.algorithm()) {
+            return true;
         }
+        error("Remote repository uses a different hash "
+                + "algorithm.");
+        return false;
     }
 
-    /** Returns/Localizes the split commit between the two given branches.
-     * @param b1 Current branch
-     * @param b Given branch
+    /** Returns the working directory of the remote NAME, which is not a
+     * directory at all if there is no such remote.
+     * @param name Name of a remote.
      */
-    private Commit split(String b1, String b) {
-        List<String> c1 = new ArrayList<>();
-        List<String> c2 = new ArrayList<>();
-
-        Branch h1 = branches.get(b1);
-        Commit commit = h1.commit();
-        String sha = commit.sha();
+    private File remoteDir(String name) {
+        String dir = remotes.get(name);
+        return new File(dir == null ? ".gitlet/missing" : dir);
+    }
 
-        while (commit != null) {
-            c1.add(commit.time());
-            sha = commits.get(sha).psha();
-            commit = commits.get(sha);
+    /** Returns the working directory named by PATH, which may name either
+     * the working directory or its .gitlet directory.
+     * @param path A directory.
+     */
+    private static File repoDir(String path) {
+        File dir = new File(path);
+        if (dir.getName().equals(".gitlet")) {
+            dir = dir.getAbsoluteFile().getParentFile();
         }
-        Branch h2 = branches.get(b);
-        commit = h2.commit();
-        sha = commit.sha();
+        return dir;
+    }
 
-        while (commit != null) {
-            c2.add(commit.time());
-            sha = commits.get(sha).psha();
-            commit = commits.get(sha);
-        }
-        List<String> equal = new ArrayList<>();
-        for (String name: c2) {
-            if (c1.contains(name)) {
-                equal.add(name);
-            }
+    /** Returns the blob store of the repository whose working directory
+     * is DIR.
+     * @param dir A working directory.
+     */
+    private static ObjectStore storeAt(File dir) {
+        return new ObjectStore(new File(new File(dir, ".gitlet"), "blobs"));
+    }
+
+    /** Returns/Localizes the split commit between the two given branches,
+     * or null if their histories are unrelated.
+     * @param b1 Current branch
+     * @param b Given branch
+     */
+    Commit split(String b1, String b) {
+        Set<ObjectId> ancestors = new HashSet<>();
+        for (Commit c = branches.get(b1).commit(); c != null;
+             c = commits.get(c.psha())) {
+            ancestors.add(c.sha());
         }
-        String s = null;
-        String csha = Collections.max(equal);
-        for (Commit comm: commits.values()) {
-            if (comm.time().equals(csha)) {
-                s = comm.sha();
+        for (Commit c = branches.get(b).commit(); c != null;
+             c = commits.get(c.psha())) {
+            if (ancestors.contains(c.sha())) {
+                return c;
             }
         }
-        return commits.get(s);
+        return null;
     }
 
     /** Check if current directory is a gitlet directory.
      * @param cmmd The command argument.
      */
-    private void isGitlet(String cmmd) {
+    private static void isGitlet(String cmmd) {
         boolean check = true;
         switch (cmmd) {
-        case "init":
+        case "init": case "clone":
             check = false;
             break;
         default:
             File thisDir = new File(".");
             File[] files = thisDir.listFiles();
             for (File file : files) {
-                if (file.getName().equals(".gitlet")) {
+                if (file.getName().equals(".gitlet")
+                        && (file.isDirectory() || _worktree != null)) {
                     check = false;
                     break;
                 }
@@ -776,76 +2297,285 @@ public class Main implements Serializable {
             break;
         }
         if (check) {
-            System.out.println("Not in an initialized gitlet directory");
-            System.exit(0);
+            error("Not in an initialized gitlet directory");
+            exit();
         }
     }
 
     /** Returns time for commit and SHA-1. */
     private String time() {
         String time;
-        SimpleDateFormat date = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
+        SimpleDateFormat date = new SimpleDateFormat(TIME_FORMAT);
         time = date.format(new Date());
         return time;
     }
 
-    /** Returns the SHA-1 of a commit.
-     * @param message The commit message.
-     * @param pHash SHA-1 for the parent.
-     * @param time Time the commit was made.
-     */
-    public String hashCommit(String message, String pHash, String time) {
-        ArrayList<Object> list = new ArrayList<>();
-        list.add(message);
-        list.add(pHash);
-        if (_head != null && !_head.branchFiles().isEmpty()) {
-            for (String n : _head.branchFiles().keySet()) {
-                File file = new File(n);
-                if (file.isFile()) {
-                    list.add(Utils.readContents(file));
-                }
-            }
+    /** Returns/load gitlet directory. In a linked worktree, the shared
+     * repository is loaded from the main working directory and the
+     * worktree's own branch and staging area replace those of the main
+     * working directory, which are set aside until the next write. */
+    public static Main loader() {
+        findRoot();
+        ObjectId.use(HashAlgorithm.of(gitletDir()));
+        Main gl = load(new File(_root, "gitlet.ser"));
+        if (gl != null && _worktree != null) {
+            gl._main = gl.checkoutState(_root);
+            gl.enter(Worktree.load(Worktree.adminDir(gitletDir(),
+                                                     _worktree)));
+        }
+        if (gl != null) {
+            gl.headLogged();
+        }
+        return gl;
+    }
+
+    /** Returns the repository, in the main working directory, with only
+     * its branches and the name of the current branch loaded, which is
+     * all that the METADATA_COMMANDS need, or null if the name is not
+     * known without loading all of it. It is known from the HEAD file if
+     * that was written after gitlet.ser, as every write does. */
+    private static Main partialLoader() {
+        findRoot();
+        File head = new File(gitletDir(), HEAD_FILE);
+        File glFile = new File(_root, "gitlet.ser");
+        if (_worktree != null || !head.isFile() || !glFile.isFile()
+                || head.lastModified() < glFile.lastModified()) {
+            return null;
         }
-        if (!staged.isEmpty()) {
-            for (String name : staged) {
-                File file = new File(name);
-                list.add(Utils.readContents(file));
+        ObjectId.use(HashAlgorithm.of(gitletDir()));
+        Main gl = new Main();
+        gl.branches = new Refs(gitletDir(), gl.commits::get);
+        gl._headName = new String(Utils.readContents(head),
+                                  StandardCharsets.UTF_8).trim();
+        gl._partial = true;
+        return gl.branches.containsKey(gl._headName) ? gl : null;
+    }
+
+    /** Sets _root and _worktree from the .gitlet in the current directory.
+     * In a linked worktree it is a file whose first line is the main
+     * working directory and whose second line is the worktree's name. */
+    private static void findRoot() {
+        File link = new File(".gitlet");
+        _root = new File(".");
+        _worktree = null;
+        if (link.isFile()) {
+            String[] lines = new String(Utils.readContents(link),
+                                        StandardCharsets.UTF_8).split("\n");
+            File root = new File(lines[0].trim());
+            if (lines.length > 1 && Worktree.load(Worktree.adminDir(
+                    new File(root, ".gitlet"), lines[1].trim())) != null) {
+                _root = root;
+                _worktree = lines[1].trim();
             }
         }
-        list.add(time);
-        saver(gitlet);
-        return Utils.sha1(list);
     }
 
-    /** Returns/load gitlet directory. */
-    public static Main loader() {
+    /** Returns the .gitlet directory of the main working directory. */
+    private static File gitletDir() {
+        return new File(_root, ".gitlet");
+    }
+
+    /** Returns the branch and staging area of this working directory, whose
+     * path is DIR.
+     * @param dir The working directory.
+     */
+    private Worktree checkoutState(File dir) {
+        return new Worktree(dir.getAbsoluteFile().toPath().normalize()
+                            .toString(), _headName, stagedFiles, removed);
+    }
+
+    /** Makes STATE the current branch and staging area.
+     * @param state A worktree's state.
+     */
+    private void enter(Worktree state) {
+        _headName = state.branch();
+        _head = branches.get(_headName);
+        stagedFiles = state.staged();
+        removed = state.removed();
+    }
+
+    /** Returns the repository saved in GLFILE, or null if there is none.
+     * @param glFile A gitlet.ser file.
+     */
+    private static Main load(File glFile) {
         Main gl = null;
-        File glFile = new File("gitlet.ser");
+        _loadError = null;
         if (glFile.exists()) {
             try {
-                ObjectInputStream obj =
-                        new ObjectInputStream(new FileInputStream(glFile));
-                gl = (Main) obj.readObject();
-            } catch (IOException | ClassNotFoundException excp) {
-                System.out.println("IOException");
+                gl = read(glFile);
+            } catch (IOException | ClassNotFoundException
+                     | ClassCastException excp) {
+                _loadError = excp.toString();
             }
         }
         return gl;
     }
 
-    /** Save gitlet directory.
+    /** Returns the repository saved in GLFILE, which must exist.
+     * @param glFile A gitlet.ser file.
+     */
+    static Main read(File glFile) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream obj =
+                 new ObjectInputStream(new FileInputStream(glFile))) {
+            Main gl = (Main) obj.readObject();
+            gl.branches = new Refs(refsDir(glFile), gl.commits::get);
+            gl._head = gl.branches.get(gl._headName);
+            return gl;
+        }
+    }
+
+    /** Returns the .gitlet directory holding the branches of the repository
+     * saved in GLFILE.
+     * @param glFile A gitlet.ser file.
+     */
+    private static File refsDir(File glFile) {
+        return new File(glFile.getAbsoluteFile().getParentFile(), ".gitlet");
+    }
+
+    /** Saves the branches of G, when nothing else about G has changed. In
+     * batch mode the write is deferred until the next flush.
+     * @param g A gitlet instance.
+     */
+    private static void saveBranches(Main g) {
+        if (_batch) {
+            _dirty = true;
+        } else {
+            g.branches.save(refsDir(new File(_root, "gitlet.ser")));
+        }
+    }
+
+    /** Save gitlet directory. In batch mode the write is deferred until
+     * the next flush.
      * @param g A gitlet instance.
      */
     public static void saver(Main g) {
-        File outFile = new File("gitlet.ser");
+        if (_batch) {
+            _dirty = true;
+        } else {
+            write(g);
+        }
+    }
+
+    /** Writes G to gitlet.ser. In a linked worktree the shared repository
+     * is written with the main working directory's branch and staging area,
+     * and the worktree's own are written to its state file.
+     * @param g A gitlet instance.
+     */
+    private static void write(Main g) {
+        if (_worktree == null) {
+            write(g, new File("gitlet.ser"));
+        } else {
+            Worktree own = g.checkoutState(new File("."));
+            g.enter(g._main);
+            try {
+                write(g, new File(_root, "gitlet.ser"));
+            } finally {
+                g.enter(own);
+            }
+            own.save(Worktree.adminDir(gitletDir(), _worktree));
+        }
+        g.logHead();
+    }
+
+    /** Writes G to OUTFILE. The blobs G has stored are synced first. The
+     * state is then written to a temporary file that is synced and
+     * atomically replaces OUTFILE, so that neither readers nor a crash
+     * ever observe a half-written repository or one that refers to blobs
+     * that were lost. Changed branches are saved last, once the commits
+     * they refer to are safe. If the state cannot be written, OUTFILE and
+     * the branches are left as they were and a GitletException describing
+     * the failure is thrown.
+     * @param g A gitlet instance.
+     * @param outFile The gitlet.ser file of G's working directory.
+     */
+    static void write(Main g, File outFile) {
+        if (g._partial) {
+            throw new IllegalStateException("repository partially loaded");
+        }
+        if (g._store != null) {
+            g._store.sync();
+        }
+        File tmpFile = new File(outFile.getPath() + ".tmp");
         try {
+            FileOutputStream file = new FileOutputStream(tmpFile);
             ObjectOutputStream out =
-                    new ObjectOutputStream(new FileOutputStream(outFile));
+                    new ObjectOutputStream(new BufferedOutputStream(file));
             out.writeObject(g);
+            out.flush();
+            file.getFD().sync();
             out.close();
+            Files.move(tmpFile.toPath(), outFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Utils.sync(outFile.getAbsoluteFile().getParentFile());
         } catch (IOException excp) {
-            excp.printStackTrace();
+            tmpFile.delete();
+            throw new GitletException("Could not save the repository: "
+                                      + excp.getMessage());
         }
+        g.branches.save(refsDir(outFile));
+        Utils.writeContents(new File(refsDir(outFile), HEAD_FILE),
+                            g._headName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Makes a new master branch, holding only an initial commit, the
+     * current branch of this new repository. */
+    void start() {
+        setHead("master", newCommit("initial commit", null, PathMap.empty(),
+                                    Collections.emptySet()));
+    }
+
+    /** Returns the branches. */
+    Refs refs() {
+        return branches;
+    }
+
+    /** Returns the name of the current branch. */
+    String headName() {
+        return _headName;
+    }
+
+    /** Returns the current branch of the main working directory, or null if
+     * it is not known. */
+    String mainBranch() {
+        return _main == null ? null : _main.branch();
+    }
+
+    /** Returns the head commit of the current branch. */
+    Commit head() {
+        return _head.commit();
+    }
+
+    /** Returns the staged files and the ids of their staged contents. */
+    Map<String, ObjectId> staged() {
+        return stagedFiles;
+    }
+
+    /** Returns the files staged for removal. */
+    Set<String> removedFiles() {
+        return removed;
+    }
+
+    /** Returns every commit. */
+    Collection<Commit> allCommits() {
+        return commits.values();
+    }
+
+    /** Makes COMMIT the head of BRANCH, and BRANCH the current branch.
+     * @param branch A branch name.
+     * @param commit The commit BRANCH is to point to.
+     */
+    void setHead(String branch, Commit commit) {
+        branches.put(branch, new Branch(branch, commit));
+        _headName = branch;
+        _head = branches.get(branch);
+    }
+
+    /** Makes STORE the store holding this repository's blobs.
+     * @param store The blob store of this repository.
+     */
+    void useStore(ObjectStore store) {
+        _store = store;
     }
 
     /** Check for the correct number of operands from input.
@@ -856,25 +2586,111 @@ public class Main implements Serializable {
         boolean check = true;
         int length = args.length;
         switch (cmmd) {
-        case "init": case "log": case "global-log": case "status":
+        case "init":
+            if (length != 1 && (length != 2
+                                || !args[1].startsWith(OBJECT_FORMAT_OPTION))) {
+                check = false;
+            }
+            break;
+        case "global-log":
             if (length != 1) {
                 check = false;
             }
             break;
+        case "status":
+            if (length != 1 && (length != 2
+                                || Renames.threshold(args[1]) < 0)) {
+                check = false;
+            }
+            break;
+        case "log":
+            if (length != 1 && (length != 3 || !args[1].equals("--"))) {
+                check = false;
+            }
+            break;
         case "commit":
             if (length > 2) {
                 check = false;
             } else if (length == 1 || args[1].trim().isEmpty()) {
-                System.out.println("Please enter a commit message.");
-                System.exit(0);
+                error("Please enter a commit message.");
+                exit();
+            }
+            break;
+        case "add": case "rm":
+            if (length < 2) {
+                check = false;
+            }
+            break;
+        case "stash":
+            if (length > 3 || length == 3 && args[1].equals("list")) {
+                check = false;
+            }
+            break;
+        case "bisect":
+            if (length < 2 || (length > 3 && !args[1].equals("start")
+                               && !args[1].equals("run"))) {
+                check = false;
             }
             break;
-        case "add": case "rm": case "find": case "branch":
-        case "rm-branch": case "reset": case "merge":
+        case "find": case "branch": case "blame": case "rm-remote":
+        case "rm-branch": case "reset": case "cherry-pick":
             if (length != 2) {
                 check = false;
             }
             break;
+        case "merge":
+            int m = length > 1 && Renames.threshold(args[1]) >= 0 ? 2 : 1;
+            if (length != m + 1 && (length != m + 3
+                                    || !args[m].equals("--no-checkout"))) {
+                check = false;
+            }
+            break;
+        case "clone":
+            if (length != 3 && (length != 4 || !args[1].equals("--shared"))) {
+                check = false;
+            }
+            break;
+        case "add-remote": case "fetch": case "push":
+            if (length != 3) {
+                check = false;
+            }
+            break;
+        case "reflog":
+            if (length > 2) {
+                check = false;
+            }
+            break;
+        case "fsck":
+            if (length > 2
+                || length == 2 && !args[1].equals("--connectivity-only")) {
+                check = false;
+            }
+            break;
+        case "fast-import":
+            if (length > 2) {
+                check = false;
+            }
+            break;
+        case "archive":
+            if (length < 2 || length > 4) {
+                check = false;
+            }
+            break;
+        case "sparse-checkout":
+            if (length == 1 || !(args[1].equals("set") && length > 2
+                                 || args[1].equals("list") && length == 2
+                                 || args[1].equals("disable")
+                                 && length == 2)) {
+                check = false;
+            }
+            break;
+        case "worktree":
+            if (length == 1 || !(args[1].equals("add") && length == 4
+                                 || args[1].equals("list") && length == 2
+                                 || args[1].equals("remove") && length == 3)) {
+                check = false;
+            }
+            break;
         case "checkout":
             if (length == 1 || length > 4
                 || (length == 3 && !args[1].equals("--"))
@@ -886,35 +2702,117 @@ public class Main implements Serializable {
             break;
         }
         if (!check) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            error("Incorrect operands.");
+            exit();
         }
     }
 
+    /** Widest change bar printed by diff --stat. */
+    private static final int STAT_WIDTH = 50;
+
+    /** Format of commit times. */
+    private static final String TIME_FORMAT = "yyyy-MM-dd hh:mm:ss";
+
+    /** Name of the file listing untracked paths to be ignored. */
+    private static final String IGNORE_FILE = ".gitletignore";
+
     /** The gitlet program. */
     private  static Main gitlet;
 
-    /** Staged, or currently added files. */
-    private Set<String> staged;
+    /** True while a batch script is running. */
+    private static boolean _batch;
+
+    /** True when a batch has made changes that are not yet saved. */
+    private static boolean _dirty;
+
+    /** True when the current command has reported an error. */
+    private static boolean _failed;
+
+    /** Names of the commands. */
+    private static final Set<String> COMMANDS = new HashSet<>(Arrays.asList(
+        "init", "add", "commit", "rm", "log", "blame", "diff", "global-log",
+        "find", "status", "checkout", "branch", "rm-branch", "reset", "merge",
+        "cherry-pick", "bisect", "stash", "clone", "add-remote", "rm-remote",
+        "fetch", "push", "worktree", "sparse-checkout", "archive",
+        "fast-import", "fsck", "reflog", "batch"));
+
+    /** Commands that read and write only branches, and so run against a
+     * partially loaded repository when they can. */
+    private static final Set<String> METADATA_COMMANDS =
+        new HashSet<>(Arrays.asList("branch", "rm-branch", "reflog"));
+
+    /** Name of the file in .gitlet naming the current branch of the main
+     * working directory, written with gitlet.ser. */
+    private static final String HEAD_FILE = "HEAD";
+
+    /** Option of init that chooses the hash algorithm. */
+    private static final String OBJECT_FORMAT_OPTION = "--object-format=";
+
+    /** Name of the branch on which bisect checks out commits. */
+    private static final String BISECT_BRANCH = "bisect";
+
+    /** The command being run, as logged in reflogs. */
+    private static String _command = "";
+
+    /** Why the last repository load failed, or null if it did not. */
+    private static String _loadError;
+
+    /** The main working directory, which holds gitlet.ser and the .gitlet
+     * directory: the current directory unless it is a linked worktree. */
+    private static File _root = new File(".");
+
+    /** Name of the linked worktree that is the current directory, or null
+     * in the main working directory. */
+    private static String _worktree;
 
     /** Removed Files. */
     private Set<String> removed;
 
     /** Map of SHA-1 values and their respective commit messages. */
-    private Map<String, String> messages;
+    private ObjectIdMap<String> messages;
 
     /** Map of SHA-1 values and their respective commits. */
-    private Map<String, Commit> commits;
+    private ObjectIdMap<Commit> commits;
 
-    /** Map of branches and their name.*/
-    private Map<String, Branch> branches;
+    /** The branches, which are saved apart from gitlet.ser. */
+    private transient Refs branches;
 
     /** Represents the current head of the branch. */
-    private Branch _head;
+    private transient Branch _head;
 
     /** The name of the current branch.*/
     private String _headName;
 
-    /** Map of SHA-1 values and their respective staged files. */
-    private Map<String, File> stagedFiles;
+    /** The commit of the current branch when the HEAD log was last
+     * written, or null if there was none. */
+    private transient ObjectId _loggedHead;
+
+    /** The current branch when the HEAD log was last written. */
+    private transient String _loggedHeadName;
+
+    /** Staged, or currently added files, and the ids of their stored
+     * contents. */
+    private Map<String, ObjectId> stagedFiles;
+
+    /** Blob storage, opened on first use. */
+    private transient ObjectStore _store;
+
+    /** Working directories of other repositories, by remote name. */
+    private Map<String, String> remotes;
+
+    /** In a linked worktree, the branch and staging area of the main
+     * working directory. */
+    private transient Worktree _main;
+
+    /** Compiled .gitletignore patterns, loaded on first use by each
+     * command. */
+    private transient PathPatterns _ignored;
+
+    /** The repository of this working directory, made by the current
+     * command on first use. */
+    private transient Repository _repo;
+
+    /** True iff only the branches and current branch name are loaded,
+     * so this must not be written. */
+    private transient boolean _partial;
 }
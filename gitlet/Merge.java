@@ -0,0 +1,188 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/** A three-way merge of blob maps, computed entirely from the object
+ *  store without touching the working directory. Only the paths that the
+ *  incoming side changed from the common ancestor are examined, and only
+ *  conflicting paths read any blob contents: everything else is decided
+ *  by comparing ids. A conflicting file is replaced by a blob holding both
+ *  versions between conflict markers.
+ *
+ *  Renames may also be detected, on each side, from the common ancestor.
+ *  A change made on one side to a file that the other side moved is then
+ *  applied at the file's new path, instead of conflicting as a change to
+ *  a deleted file.
+ *  @author Anh Le & Roberto Romo
+ */
+class Merge {
+
+    /** Merges THEIRS into OURS, two descendants of BASE, storing conflict
+     * blobs in STORE.
+     * @param base The blob map of the common ancestor.
+     * @param ours The blob map of the side merged into.
+     * @param theirs The blob map of the side merged in.
+     * @param store The store holding the blobs of all three.
+     */
+    Merge(PathMap<ObjectId> base, PathMap<ObjectId> ours,
+          PathMap<ObjectId> theirs, ObjectStore store) {
+        this(base, ours, theirs, store, -1);
+    }
+
+    /** Merges THEIRS into OURS, two descendants of BASE, storing conflict
+     * blobs in STORE and following files that either side renamed with at
+     * least THRESHOLD percent similarity. A negative THRESHOLD turns off
+     * rename detection.
+     * @param base The blob map of the common ancestor.
+     * @param ours The blob map of the side merged into.
+     * @param theirs The blob map of the side merged in.
+     * @param store The store holding the blobs of all three.
+     * @param threshold Least similarity of a rename, in percent, or -1.
+     */
+    Merge(PathMap<ObjectId> base, PathMap<ObjectId> ours,
+          PathMap<ObjectId> theirs, ObjectStore store, int threshold) {
+        _store = store;
+        _result = ours;
+        SortedSet<String> changes = theirs.changes(base);
+        Map<String, String> theirsFrom = new HashMap<>();
+        Map<String, String> theirsTo = new HashMap<>();
+        Map<String, String> oursTo = new HashMap<>();
+        if (threshold >= 0) {
+            renames(base, theirs, changes, threshold, theirsFrom, theirsTo);
+            renames(base, ours, ours.changes(base), threshold,
+                    new HashMap<>(), oursTo);
+        }
+        for (String path : changes) {
+            ObjectId b = base.get(path);
+            ObjectId o = ours.get(path);
+            ObjectId t = theirs.get(path);
+            String from = theirsFrom.get(path);
+            if (theirsTo.containsKey(path) && o != null) {
+                set(path, null, false);
+            } else if (from != null && o == null
+                       && ours.get(from) != null) {
+                merge(path, base.get(from), ours.get(from), t);
+            } else if (oursTo.containsKey(path) && o == null && t != null) {
+                String to = oursTo.get(path);
+                merge(to, b, ours.get(to), t);
+            } else {
+                merge(path, b, o, t);
+            }
+        }
+    }
+
+    /** Returns the merged blob map. */
+    PathMap<ObjectId> result() {
+        return _result;
+    }
+
+    /** Returns the paths whose blobs in the result differ from ours, in
+     * order. */
+    List<String> changed() {
+        return Collections.unmodifiableList(new ArrayList<>(_changed));
+    }
+
+    /** Returns the paths that conflict, in order. */
+    List<String> conflicts() {
+        return Collections.unmodifiableList(new ArrayList<>(_conflicts));
+    }
+
+    /** Adds to FROM and TO the renames from BASE to SIDE among the paths
+     * CHANGES, at least THRESHOLD percent alike, by new and old path. */
+    private void renames(PathMap<ObjectId> base, PathMap<ObjectId> side,
+                         Collection<String> changes, int threshold,
+                         Map<String, String> from, Map<String, String> to) {
+        Renames renames = new Renames(base, side, changes,
+                                      p -> _store.get(base.get(p)),
+                                      p -> _store.get(side.get(p)),
+                                      threshold);
+        for (Renames.Rename r : renames.renames()) {
+            if (!r.copy()) {
+                from.put(r.to(), r.from());
+                to.put(r.from(), r.to());
+            }
+        }
+    }
+
+    /** Merges the versions B, O and T of PATH in the common ancestor, ours
+     * and theirs, where any of them may be null for a missing file. */
+    private void merge(String path, ObjectId b, ObjectId o, ObjectId t) {
+        if (Objects.equals(o, t) || Objects.equals(t, b)) {
+            set(path, o, false);
+        } else if (Objects.equals(o, b)) {
+            set(path, t, false);
+        } else {
+            set(path, _store.put(conflict(o, t, _store)), true);
+        }
+    }
+
+    /** Makes ID, or nothing if ID is null, the result's version of PATH,
+     * noting the path as changed if that differs from ours and as a
+     * conflict if CONFLICT. */
+    private void set(String path, ObjectId id, boolean conflict) {
+        if (Objects.equals(_result.get(path), id)) {
+            return;
+        }
+        _result = id == null ? _result.minus(path) : _result.plus(path, id);
+        _changed.add(path);
+        if (conflict) {
+            _conflicts.add(path);
+        }
+    }
+
+    /** Returns the contents of a conflicted file whose versions are blobs
+     * OURS and THEIRS in STORE, either of which may be null for a deleted
+     * file. Each version is ended by a newline if it lacks one. */
+    private static byte[] conflict(ObjectId ours, ObjectId theirs,
+                                   ObjectStore store) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marker(out, "<<<<<<< HEAD");
+        version(out, ours, store);
+        marker(out, "=======");
+        version(out, theirs, store);
+        marker(out, ">>>>>>>");
+        return out.toByteArray();
+    }
+
+    /** Writes the contents of blob ID in STORE, if ID is not null, to OUT,
+     * followed by a newline if they do not end with one. */
+    private static void version(ByteArrayOutputStream out, ObjectId id,
+                                ObjectStore store) {
+        if (id == null) {
+            return;
+        }
+        byte[] contents = store.get(id);
+        out.write(contents, 0, contents.length);
+        if (contents.length > 0 && contents[contents.length - 1] != '\n') {
+            out.write('\n');
+        }
+    }
+
+    /** Writes the conflict marker line TEXT to OUT. */
+    private static void marker(ByteArrayOutputStream out, String text) {
+        byte[] line = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        out.write(line, 0, line.length);
+    }
+
+    /** The store holding the blobs. */
+    private final ObjectStore _store;
+
+    /** The merged blob map. */
+    private PathMap<ObjectId> _result;
+
+    /** Paths whose blobs differ from ours. */
+    private final TreeSet<String> _changed = new TreeSet<>();
+
+    /** Paths that conflict. */
+    private final TreeSet<String> _conflicts = new TreeSet<>();
+}
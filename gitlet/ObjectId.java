@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.Serializable;
+
+/** The id of a commit or file: the digest of its contents under the
+ *  repository's hash algorithm, held as 160 or 256 raw bits rather than as
+ *  a hex string. Ids are immutable and compare, hash and order by their
+ *  bits.
+ *  @author Anh Le & Roberto Romo
+ */
+final class ObjectId implements Comparable<ObjectId>, Serializable {
+
+    /** Returns the hash algorithm that names new objects. */
+    static HashAlgorithm algorithm() {
+        return _algorithm;
+    }
+
+    /** Makes ALGORITHM the one that names new objects.
+     * @param algorithm The repository's hash algorithm.
+     */
+    static void use(HashAlgorithm algorithm) {
+        _algorithm = algorithm;
+        _zero = of(new byte[algorithm.length()]);
+    }
+
+    /** Returns the id whose bytes are DIGEST.
+     * @param digest A digest of 20 or 32 bytes.
+     */
+    static ObjectId of(byte[] digest) {
+        int n = digest.length;
+        if (n != HashAlgorithm.SHA1.length()
+                && n != HashAlgorithm.SHA256.length()) {
+            throw new IllegalArgumentException("bad object id length");
+        }
+        return new ObjectId(word(digest, 0), word(digest, 8),
+                            word(digest, 16), word(digest, 24), n);
+    }
+
+    /** Returns the id whose hex form is HEX, or null if HEX is not a
+     * full-length hex id.
+     * @param hex Hex digits of an id.
+     */
+    static ObjectId parse(String hex) {
+        if (hex == null || hex.length() != HashAlgorithm.SHA1.hexLength()
+                && hex.length() != HashAlgorithm.SHA256.hexLength()) {
+            return null;
+        }
+        byte[] digest = new byte[hex.length() / 2];
+        for (int i = 0; i < digest.length; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            digest[i] = (byte) (hi << 4 | lo);
+        }
+        return of(digest);
+    }
+
+    /** Returns the id, under the current algorithm, of the concatenation
+     * of VALS, which may be any mixture of byte arrays and Strings.
+     * @param vals The hashed values.
+     */
+    static ObjectId hash(Object... vals) {
+        return of(_algorithm.digest(vals));
+    }
+
+    /** Returns the id of the current algorithm's length whose bits are
+     * all zero, which names no object. */
+    static ObjectId zero() {
+        return _zero;
+    }
+
+    /** An id of LENGTH bytes with the bits W0 to W3, most significant
+     * first. */
+    private ObjectId(long w0, long w1, long w2, long w3, int length) {
+        _w0 = w0;
+        _w1 = w1;
+        _w2 = w2;
+        _w3 = w3;
+        _length = (byte) length;
+    }
+
+    /** Returns the number of bytes in this id. */
+    int length() {
+        return _length;
+    }
+
+    /** Returns true iff all the bits of this id are zero. */
+    boolean isZero() {
+        return (_w0 | _w1 | _w2 | _w3) == 0;
+    }
+
+    /** Returns the bytes of this id. */
+    byte[] bytes() {
+        byte[] result = new byte[_length];
+        long[] words = { _w0, _w1, _w2, _w3 };
+        for (int i = 0; i < _length; i += 1) {
+            int bytes = Math.min(8, _length - i / 8 * 8);
+            result[i] = (byte) (words[i / 8] >>> (8 * (bytes - 1 - i % 8)));
+        }
+        return result;
+    }
+
+    /** Returns true iff the hex form of this id starts with PREFIX.
+     * @param prefix Leading hex digits, in lower case.
+     */
+    boolean startsWith(String prefix) {
+        return prefix.length() <= 2 * _length
+            && toString().startsWith(prefix);
+    }
+
+    /** Returns a well-mixed 32-bit hash, for use by open-addressing
+     *  tables. Digest bits are already uniform, so no mixing is needed. */
+    int spread() {
+        return (int) (_w0 >>> 32);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId id = (ObjectId) obj;
+        return _w0 == id._w0 && _w1 == id._w1 && _w2 == id._w2
+            && _w3 == id._w3 && _length == id._length;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) _w0;
+    }
+
+    @Override
+    public int compareTo(ObjectId id) {
+        int cmp = Long.compareUnsigned(_w0, id._w0);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(_w1, id._w1);
+        }
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(_w2, id._w2);
+        }
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(_w3, id._w3);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compare(_length, id._length);
+        }
+        return cmp;
+    }
+
+    @Override
+    public String toString() {
+        char[] result = new char[2 * _length];
+        long[] words = { _w0, _w1, _w2, _w3 };
+        for (int i = 0; 8 * i < _length; i += 1) {
+            hex(words[i], 2 * Math.min(8, _length - 8 * i), result, 16 * i);
+        }
+        return new String(result);
+    }
+
+    /** Returns the big-endian value of the up to eight bytes of BYTES
+     * starting at START, or 0 if START is past its end. */
+    private static long word(byte[] bytes, int start) {
+        long result = 0;
+        for (int i = start; i < Math.min(start + 8, bytes.length); i += 1) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result;
+    }
+
+    /** Writes the low DIGITS hex digits of W into OUT at START. */
+    private static void hex(long w, int digits, char[] out, int start) {
+        for (int i = digits - 1; i >= 0; i -= 1) {
+            out[start + i] = HEX[(int) (w & 0xf)];
+            w >>>= 4;
+        }
+    }
+
+    /** Hex digits. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Bits 0-63 of the id. */
+    private final long _w0;
+
+    /** Bits 64-127 of the id. */
+    private final long _w1;
+
+    /** Bits 128-191 of the id, or its last 32 bits if it has 160. */
+    private final long _w2;
+
+    /** Bits 192-255 of the id, or 0. */
+    private final long _w3;
+
+    /** Number of bytes in the id. */
+    private final byte _length;
+
+    /** The algorithm naming new objects. */
+    private static HashAlgorithm _algorithm = HashAlgorithm.SHA1;
+
+    /** The zero id of _algorithm's length. */
+    private static ObjectId _zero =
+        of(new byte[HashAlgorithm.SHA1.length()]);
+}
@@ -0,0 +1,232 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/** A mutable map keyed by ObjectIds, stored in open-addressing tables with
+ *  linear probing. Keys and values sit in two parallel arrays, so there is
+ *  no entry object per mapping, and probing compares ids by their bits.
+ *  Null keys are not allowed; looking one up yields null.
+ *  @author Anh Le & Roberto Romo
+ */
+final class ObjectIdMap<V> extends AbstractMap<ObjectId, V>
+    implements Serializable {
+
+    /** An empty map. */
+    ObjectIdMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof ObjectId && slot((ObjectId) key) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (!(key instanceof ObjectId)) {
+            return null;
+        }
+        int i = slot((ObjectId) key);
+        return i < 0 ? null : (V) _vals[i];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(ObjectId key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("null ObjectId key");
+        }
+        int mask = _keys.length - 1;
+        int i = key.spread() & mask;
+        for (; _keys[i] != null; i = (i + 1) & mask) {
+            if (_keys[i].equals(key)) {
+                V old = (V) _vals[i];
+                _vals[i] = value;
+                return old;
+            }
+        }
+        _keys[i] = key;
+        _vals[i] = value;
+        _size += 1;
+        _modCount += 1;
+        if (_size * 4 > _keys.length * 3) {
+            rehash(_keys.length * 2);
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (!(key instanceof ObjectId)) {
+            return null;
+        }
+        int i = slot((ObjectId) key);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) _vals[i];
+        deleteSlot(i);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        _size = 0;
+        _modCount += 1;
+    }
+
+    @Override
+    public Set<Map.Entry<ObjectId, V>> entrySet() {
+        return new AbstractSet<Map.Entry<ObjectId, V>>() {
+            @Override
+            public Iterator<Map.Entry<ObjectId, V>> iterator() {
+                return new Entries();
+            }
+
+            @Override
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    /** Returns the slot holding KEY, or -1. */
+    private int slot(ObjectId key) {
+        int mask = _keys.length - 1;
+        for (int i = key.spread() & mask; _keys[i] != null;
+             i = (i + 1) & mask) {
+            if (_keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Empties slot I, shifting later members of its probe run back so
+     *  that no tombstones are needed. */
+    private void deleteSlot(int i) {
+        int mask = _keys.length - 1;
+        int hole = i;
+        for (int j = (i + 1) & mask; _keys[j] != null; j = (j + 1) & mask) {
+            int home = _keys[j].spread() & mask;
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                _keys[hole] = _keys[j];
+                _vals[hole] = _vals[j];
+                hole = j;
+            }
+        }
+        _keys[hole] = null;
+        _vals[hole] = null;
+        _size -= 1;
+        _modCount += 1;
+    }
+
+    /** Moves all mappings into new tables of CAPACITY slots. */
+    @SuppressWarnings("unchecked")
+    private void rehash(int capacity) {
+        ObjectId[] keys = _keys;
+        Object[] vals = _vals;
+        allocate(capacity);
+        _size = 0;
+        for (int i = 0; i < keys.length; i += 1) {
+            if (keys[i] != null) {
+                put(keys[i], (V) vals[i]);
+            }
+        }
+    }
+
+    /** Replaces the tables with empty ones of CAPACITY slots. */
+    private void allocate(int capacity) {
+        _keys = new ObjectId[capacity];
+        _vals = new Object[capacity];
+    }
+
+    /** Writes the mappings of this map, without its empty slots, to OUT. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeInt(_size);
+        for (int i = 0; i < _keys.length; i += 1) {
+            if (_keys[i] != null) {
+                out.writeObject(_keys[i]);
+                out.writeObject(_vals[i]);
+            }
+        }
+    }
+
+    /** Reads a map written by writeObject from IN. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        int capacity = MIN_CAPACITY;
+        while (size * 4 > capacity * 3) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+        for (int i = 0; i < size; i += 1) {
+            put((ObjectId) in.readObject(), (V) in.readObject());
+        }
+    }
+
+    /** Iterator over the occupied slots. It does not support remove. */
+    private final class Entries implements Iterator<Map.Entry<ObjectId, V>> {
+        @Override
+        public boolean hasNext() {
+            while (_next < _keys.length && _keys[_next] == null) {
+                _next += 1;
+            }
+            return _next < _keys.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<ObjectId, V> next() {
+            if (_expected != _modCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int i = _next;
+            _next += 1;
+            return new SimpleImmutableEntry<>(_keys[i], (V) _vals[i]);
+        }
+
+        /** Next slot to examine. */
+        private int _next;
+        /** _modCount when this iterator was made. */
+        private final int _expected = _modCount;
+    }
+
+    /** Smallest table size; a power of two. */
+    private static final int MIN_CAPACITY = 16;
+
+    /** Keys, indexed by slot. */
+    private transient ObjectId[] _keys;
+
+    /** Values, indexed by slot. */
+    private transient Object[] _vals;
+
+    /** Number of mappings. */
+    private transient int _size;
+
+    /** Count of structural changes, for iterator checks. */
+    private transient int _modCount;
+}
@@ -0,0 +1,245 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Content-addressed storage for file contents (blobs). Each blob is
+ *  kept once, in a file named by its id under a two-digit fan-out
+ *  directory, no matter how many commits or paths refer to it.
+ *
+ *  A store may also borrow from alternates: other, read-only blob
+ *  directories listed one per line in info/alternates below its own
+ *  directory. Blobs are looked up in the alternates first, and only blobs
+ *  found in none of them are written to this store, so repositories on
+ *  one host can share a single copy of their common history.
+ *
+ *  New blobs are made durable in groups rather than one fsync at a time:
+ *  small blobs are also recorded in a Journal, which sync() forces to disk
+ *  once for everything put since the previous sync.
+ *  @author Anh Le & Roberto Romo
+ */
+class ObjectStore {
+
+    /** A store keeping its blobs below DIR.
+     * @param dir The blob directory, normally .gitlet/blobs.
+     */
+    ObjectStore(File dir) {
+        this(dir, 0);
+    }
+
+    /** A store keeping its blobs below DIR, which is reached through
+     * DEPTH levels of alternates. */
+    private ObjectStore(File dir, int depth) {
+        _dir = dir;
+        _journal = depth == 0 ? new Journal(new File(dir, "journal")) : null;
+        File list = alternatesFile();
+        if (depth < MAX_DEPTH && list.isFile()) {
+            String text = new String(Utils.readContents(list));
+            for (String line : text.split("\r?\n")) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                File alt = new File(line);
+                if (!alt.isAbsolute()) {
+                    alt = new File(dir, line);
+                }
+                _alternates.add(new ObjectStore(alt, depth + 1));
+            }
+        }
+    }
+
+    /** Adds the blob directory DIR to this store's alternates and records
+     * it in info/alternates.
+     * @param dir The blob directory of another repository.
+     */
+    void addAlternate(File dir) {
+        File list = alternatesFile();
+        String text = list.isFile() ? new String(Utils.readContents(list))
+            : "";
+        list.getParentFile().mkdirs();
+        Utils.writeContents(list,
+            (text + dir.getAbsolutePath() + "\n").getBytes());
+        _alternates.add(new ObjectStore(dir.getAbsoluteFile(), 1));
+    }
+
+    /** Returns the file that holds blob ID, looking in the alternates
+     * before this store. If no store holds ID, returns the file in this
+     * store that would hold it.
+     * @param id A blob id.
+     */
+    File file(ObjectId id) {
+        for (ObjectStore alt : _alternates) {
+            File f = alt.file(id);
+            if (f.isFile()) {
+                return f;
+            }
+        }
+        return localFile(id);
+    }
+
+    /** Returns the file in this store's own directory that holds, or would
+     * hold, blob ID.
+     * @param id A blob id.
+     */
+    private File localFile(ObjectId id) {
+        String hex = id.toString();
+        return new File(new File(_dir, hex.substring(0, 2)),
+                        hex.substring(2));
+    }
+
+    /** Returns the file listing this store's alternates. */
+    private File alternatesFile() {
+        return new File(new File(_dir, "info"), "alternates");
+    }
+
+    /** Returns true iff blob ID is in this store.
+     * @param id A blob id.
+     */
+    boolean contains(ObjectId id) {
+        return file(id).isFile();
+    }
+
+    /** Returns the contents of blob ID.
+     * @param id A blob id, which must be in this store.
+     */
+    byte[] get(ObjectId id) {
+        return Utils.readContents(file(id));
+    }
+
+    /** Returns the length of blob ID.
+     * @param id A blob id, which must be in this store.
+     */
+    long size(ObjectId id) {
+        return file(id).length();
+    }
+
+    /** Copies the contents of blob ID to OUT without holding them all in
+     * memory.
+     * @param id A blob id, which must be in this store.
+     * @param out The destination stream.
+     */
+    void writeTo(ObjectId id, OutputStream out) throws IOException {
+        Files.copy(file(id).toPath(), out);
+    }
+
+    /** Stores CONTENTS, if not already present, and returns their id.
+     * @param contents The contents of a file.
+     */
+    ObjectId put(byte[] contents) {
+        ObjectId id = ObjectId.hash(contents);
+        put(id, contents);
+        return id;
+    }
+
+    /** Stores CONTENTS as blob ID unless it is already present here or in
+     * an alternate. The blob is written under a temporary name and then
+     * renamed, so a stored blob is always complete. It is durable after
+     * the next sync.
+     * @param id The id of CONTENTS.
+     * @param contents The contents of a file.
+     */
+    void put(ObjectId id, byte[] contents) {
+        if (contains(id)) {
+            return;
+        }
+        boolean journaled = contents.length <= Journal.MAX_BLOB;
+        if (journaled) {
+            _journal.add(id, contents);
+        }
+        write(id, contents, !journaled);
+    }
+
+    /** Writes CONTENTS to the file of blob ID in this store, syncing the
+     * file before it is renamed into place if SYNC.
+     * @param id The id of CONTENTS.
+     * @param contents The contents of a file.
+     * @param sync True if the blob is not journaled.
+     */
+    private void write(ObjectId id, byte[] contents, boolean sync) {
+        File dest = localFile(id);
+        dest.getParentFile().mkdirs();
+        String tmpName = dest.getName() + "."
+            + Thread.currentThread().getId() + ".tmp";
+        File tmp = new File(dest.getParentFile(), tmpName);
+        Utils.writeContents(tmp, contents);
+        if (sync) {
+            Utils.sync(tmp);
+            _unsyncedDirs.add(dest.getParentFile());
+        }
+        try {
+            Files.move(tmp.toPath(), dest.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Makes every blob put in this store so far durable, with one fsync
+     * of the journal for all the small ones. Large blobs were synced as
+     * they were written, and only their directories remain to be synced.
+     * Checkpoints the journal if it has grown too large. */
+    void sync() {
+        _journal.commit();
+        synchronized (_unsyncedDirs) {
+            for (File dir : _unsyncedDirs) {
+                Utils.sync(dir);
+            }
+            _unsyncedDirs.clear();
+        }
+        if (_journal.full()) {
+            _journal.checkpoint(this::localFile);
+        }
+    }
+
+    /** Repairs this store after a crash, as described by Journal.recover.
+     */
+    void recover() {
+        _journal.recover(this::localFile,
+                         (id, contents) -> write(id, contents, false));
+    }
+
+    /** Writes the contents of blob ID to DEST, creating its directory as
+     * needed.
+     * @param id A blob id, which must be in this store.
+     * @param dest The file to be written.
+     */
+    void copyTo(ObjectId id, File dest) {
+        File parent = dest.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        try {
+            Files.copy(file(id).toPath(), dest.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The directory holding the blobs. */
+    private final File _dir;
+
+    /** Records new small blobs until they have been synced, or null in
+     * an alternate, which is never written. */
+    private final Journal _journal;
+
+    /** Directories of large blobs whose new entries are not yet synced. */
+    private final Set<File> _unsyncedDirs =
+        Collections.synchronizedSet(new HashSet<>());
+
+    /** Stores consulted before this one. */
+    private final List<ObjectStore> _alternates = new ArrayList<>();
+
+    /** Longest chain of alternates followed. */
+    private static final int MAX_DEPTH = 5;
+}
@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Transfer of history between two repositories. The sender walks back
+ *  from the commits the receiver wants until it reaches commits the
+ *  receiver already has, and then sends just the missing commits and the
+ *  blobs they introduced, compressed together into a single pack stream.
+ *  @author Anh Le & Roberto Romo
+ */
+class Pack {
+
+    /** Not instantiable. */
+    private Pack() {
+    }
+
+    /** Returns the commits reachable from TIPS that the receiver lacks,
+     * oldest first, stopping each walk at the first commit that HAVE
+     * accepts or that was already collected.
+     * @param tips The commits the receiver wants.
+     * @param commits Looks up the sender's commits by id.
+     * @param have True for the ids of commits the receiver has.
+     */
+    static List<Commit> missing(Collection<Commit> tips,
+                                Function<ObjectId, Commit> commits,
+                                Predicate<ObjectId> have) {
+        List<Commit> result = new ArrayList<>();
+        Set<ObjectId> seen = new HashSet<>();
+        for (Commit tip : tips) {
+            List<Commit> walk = new ArrayList<>();
+            for (Commit c = tip; c != null && !have.test(c.sha())
+                     && seen.add(c.sha());
+                 c = c.psha() == null ? null : commits.apply(c.psha())) {
+                walk.add(c);
+            }
+            Collections.reverse(walk);
+            result.addAll(walk);
+        }
+        return result;
+    }
+
+    /** Returns the ids of the blobs introduced by COMMITS that STORE, the
+     * receiver's store, does not hold. Only the paths each commit changed
+     * from its parent are examined.
+     * @param commits Commits to be sent.
+     * @param parents Looks up the sender's commits by id.
+     * @param store The receiver's blob store.
+     */
+    static Set<ObjectId> blobs(List<Commit> commits,
+                               Function<ObjectId, Commit> parents,
+                               ObjectStore store) {
+        Set<ObjectId> result = new LinkedHashSet<>();
+        for (Commit c : commits) {
+            Commit p = c.psha() == null ? null : parents.apply(c.psha());
+            PathMap<ObjectId> files = c.files();
+            Collection<String> paths = p == null ? files.keySet()
+                : files.changes(p.files());
+            for (String path : paths) {
+                ObjectId id = files.get(path);
+                if (id != null && !result.contains(id)
+                        && !store.contains(id)) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Writes a pack to FILE holding the contents of BLOBS, read from
+     * STORE, followed by COMMITS.
+     * @param file Destination of the pack.
+     * @param blobs Ids of the blobs to be sent.
+     * @param store The sender's blob store.
+     * @param commits Commits to be sent, oldest first.
+     */
+    static void write(File file, Collection<ObjectId> blobs,
+                      ObjectStore store, List<Commit> commits) {
+        try (ObjectOutputStream out = new ObjectOutputStream(
+                 new DeflaterOutputStream(new BufferedOutputStream(
+                     new FileOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(blobs.size());
+            for (ObjectId id : blobs) {
+                byte[] contents = store.get(id);
+                out.write(id.bytes());
+                out.writeInt(contents.length);
+                out.write(contents);
+            }
+            out.writeInt(commits.size());
+            for (Commit c : commits) {
+                out.writeObject(c);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads the pack in FILE, adding its blobs to STORE after checking
+     * their ids, and returns its commits, oldest first.
+     * @param file A pack written by write.
+     * @param store The receiver's blob store.
+     */
+    static List<Commit> read(File file, ObjectStore store) {
+        try (ObjectInputStream in = new ObjectInputStream(
+                 new InflaterInputStream(new BufferedInputStream(
+                     new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("not a gitlet pack");
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                byte[] raw = new byte[ObjectId.algorithm().length()];
+                in.readFully(raw);
+                byte[] contents = new byte[in.readInt()];
+                in.readFully(contents);
+                ObjectId id = ObjectId.of(raw);
+                if (!ObjectId.hash(contents).equals(id)) {
+                    throw new IllegalArgumentException("corrupt pack");
+                }
+                store.put(id, contents);
+            }
+            List<Commit> result = new ArrayList<>();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                result.add((Commit) in.readObject());
+            }
+            return result;
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** First word of every pack. */
+    private static final int MAGIC = 0x47504b31;
+}
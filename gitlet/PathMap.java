@@ -0,0 +1,559 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/** An immutable map from paths to values, stored as a hash array mapped
+ *  trie. Adding or removing a path copies only the trie nodes on the way
+ *  to that path, so a commit's map shares every unchanged node with the
+ *  map of its parent. Because Java serialization writes a shared node
+ *  once, the sharing also holds in gitlet.ser.
+ *
+ *  The shape of the trie depends only on the paths it holds, never on the
+ *  order in which they were added or removed.
+ *  @author Anh Le & Roberto Romo
+ */
+final class PathMap<V> extends AbstractMap<String, V>
+    implements Serializable {
+
+    /** Returns the empty map. */
+    @SuppressWarnings("unchecked")
+    static <V> PathMap<V> empty() {
+        return (PathMap<V>) EMPTY;
+    }
+
+    /** Returns a map holding the entries of MAP.
+     * @param map The entries to be copied.
+     */
+    static <V> PathMap<V> of(Map<String, V> map) {
+        PathMap<V> result = empty();
+        for (Map.Entry<String, V> e : map.entrySet()) {
+            result = result.plus(e.getKey(), e.getValue());
+        }
+        return result;
+    }
+
+    /** A map with trie ROOT holding SIZE entries. */
+    private PathMap(Node root, int size) {
+        _root = root;
+        _size = size;
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && find((String) key) != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        Leaf leaf = find((String) key);
+        return leaf == null ? null : (V) leaf._value;
+    }
+
+    /** Returns a map like this one, but with PATH mapped to VALUE.
+     * @param path The path to be added or replaced.
+     * @param value Its new value, which must not be null.
+     */
+    PathMap<V> plus(String path, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null value in PathMap");
+        }
+        Leaf leaf = new Leaf(path, value);
+        Node root = insert(_root, leaf, 0);
+        if (root == _root) {
+            return this;
+        }
+        return new PathMap<>(root, find(_root, path, leaf._hash, 0) == null
+                                   ? _size + 1 : _size);
+    }
+
+    /** Returns a map like this one, but without PATH.
+     * @param path The path to be removed.
+     */
+    PathMap<V> minus(String path) {
+        if (find(path) == null) {
+            return this;
+        }
+        Object root = delete(_root, path, hash(path), 0);
+        return root == null ? empty()
+            : new PathMap<V>((Node) root, _size - 1);
+    }
+
+    /** Returns the tree hash of this map: a digest covering every path and
+     * the string form of its value. Each trie node remembers its own hash,
+     * so after a change only the nodes on the changed paths are hashed
+     * again. Equal maps have equal tree hashes. */
+    ObjectId treeHash() {
+        return _root == null ? ObjectId.hash("") : digest(_root);
+    }
+
+    /** Returns true iff the tree hash remembered by each trie node of this
+     * map matches the hash recomputed from the node's contents. Nodes in
+     * VERIFIED, which may be shared with other maps, are skipped, and
+     * nodes found sound are added to it.
+     * @param verified Nodes already verified; may be shared by threads.
+     */
+    boolean verifyTree(Set<Object> verified) {
+        return _root == null || verify(_root, verified);
+    }
+
+    /** Returns the sorted paths whose values differ between this map and
+     * OTHER, including paths present in only one of them. Trie nodes that
+     * the two maps share, or whose tree hashes are known to be equal, are
+     * skipped without being visited.
+     * @param other The map compared with this one.
+     */
+    SortedSet<String> changes(PathMap<V> other) {
+        SortedSet<String> result = new TreeSet<>();
+        changes(_root, other._root, 0, result);
+        return result;
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        return new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                return new Entries<>(_root);
+            }
+
+            @Override
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    /** Returns the leaf holding PATH, or null. */
+    private Leaf find(String path) {
+        return find(_root, path, hash(path), 0);
+    }
+
+    /** Returns the leaf holding PATH, whose hash is HASH, below NODE at
+     *  trie level SHIFT, or null. */
+    private static Leaf find(Node node, String path, int hash, int shift) {
+        while (node != null) {
+            if (shift >= MAX_SHIFT) {
+                for (Object slot : node._slots) {
+                    if (((Leaf) slot)._key.equals(path)) {
+                        return (Leaf) slot;
+                    }
+                }
+                return null;
+            }
+            int bit = bit(hash, shift);
+            if ((node._bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node._slots[index(node._bitmap, bit)];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf._hash == hash && leaf._key.equals(path)
+                    ? leaf : null;
+            }
+            node = (Node) slot;
+            shift += BITS;
+        }
+        return null;
+    }
+
+    /** Returns NODE, at trie level SHIFT, with LEAF added or replacing the
+     *  leaf with the same key. Returns NODE itself if nothing changes. */
+    private static Node insert(Node node, Leaf leaf, int shift) {
+        if (shift >= MAX_SHIFT) {
+            return insertCollision(node, leaf);
+        }
+        int bit = bit(leaf._hash, shift);
+        if (node == null) {
+            return new Node(bit, new Object[] {leaf});
+        }
+        int idx = index(node._bitmap, bit);
+        if ((node._bitmap & bit) == 0) {
+            Object[] slots = new Object[node._slots.length + 1];
+            System.arraycopy(node._slots, 0, slots, 0, idx);
+            slots[idx] = leaf;
+            System.arraycopy(node._slots, idx, slots, idx + 1,
+                             node._slots.length - idx);
+            return new Node(node._bitmap | bit, slots);
+        }
+        Object slot = node._slots[idx];
+        Object replacement;
+        if (slot instanceof Leaf) {
+            Leaf old = (Leaf) slot;
+            if (old._key.equals(leaf._key)) {
+                if (old._value.equals(leaf._value)) {
+                    return node;
+                }
+                replacement = leaf;
+            } else {
+                replacement =
+                    insert(insert(null, old, shift + BITS), leaf,
+                           shift + BITS);
+            }
+        } else {
+            replacement = insert((Node) slot, leaf, shift + BITS);
+            if (replacement == slot) {
+                return node;
+            }
+        }
+        Object[] slots = node._slots.clone();
+        slots[idx] = replacement;
+        return new Node(node._bitmap, slots);
+    }
+
+    /** Returns the collision node NODE with LEAF added, keeping its leaves
+     *  sorted by key. */
+    private static Node insertCollision(Node node, Leaf leaf) {
+        Object[] slots = node == null ? new Object[0] : node._slots;
+        int i;
+        for (i = 0; i < slots.length; i += 1) {
+            Leaf old = (Leaf) slots[i];
+            int cmp = old._key.compareTo(leaf._key);
+            if (cmp == 0) {
+                if (old._value.equals(leaf._value)) {
+                    return node;
+                }
+                Object[] result = slots.clone();
+                result[i] = leaf;
+                return new Node(0, result);
+            } else if (cmp > 0) {
+                break;
+            }
+        }
+        Object[] result = new Object[slots.length + 1];
+        System.arraycopy(slots, 0, result, 0, i);
+        result[i] = leaf;
+        System.arraycopy(slots, i, result, i + 1, slots.length - i);
+        return new Node(0, result);
+    }
+
+    /** Returns NODE, at trie level SHIFT, without the leaf for PATH, whose
+     *  hash is HASH. Returns null if the result would be empty, and a lone
+     *  leaf if only one leaf would remain, so that the parent can inline
+     *  it. */
+    private static Object delete(Node node, String path, int hash,
+                                 int shift) {
+        if (shift >= MAX_SHIFT) {
+            Object[] slots = node._slots;
+            int i;
+            for (i = 0; !((Leaf) slots[i])._key.equals(path); i += 1) {
+                continue;
+            }
+            if (slots.length == 2) {
+                return slots[1 - i];
+            }
+            Object[] result = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, result, 0, i);
+            System.arraycopy(slots, i + 1, result, i, result.length - i);
+            return new Node(0, result);
+        }
+        int bit = bit(hash, shift);
+        int idx = index(node._bitmap, bit);
+        Object slot = node._slots[idx];
+        Object replacement =
+            slot instanceof Leaf ? null
+            : delete((Node) slot, path, hash, shift + BITS);
+        if (replacement == null) {
+            if (node._slots.length == 1) {
+                return null;
+            }
+            Object[] slots = new Object[node._slots.length - 1];
+            System.arraycopy(node._slots, 0, slots, 0, idx);
+            System.arraycopy(node._slots, idx + 1, slots, idx,
+                             slots.length - idx);
+            if (slots.length == 1 && slots[0] instanceof Leaf && shift > 0) {
+                return slots[0];
+            }
+            return new Node(node._bitmap & ~bit, slots);
+        }
+        if (replacement instanceof Leaf && node._slots.length == 1
+            && shift > 0) {
+            return replacement;
+        }
+        Object[] slots = node._slots.clone();
+        slots[idx] = replacement;
+        return new Node(node._bitmap, slots);
+    }
+
+    /** Adds to OUT the paths whose values differ between the trie slots X
+     *  and Y, which are nodes, leaves or null, at trie level SHIFT. */
+    private static void changes(Object x, Object y, int shift,
+                                Collection<String> out) {
+        if (x == y) {
+            return;
+        }
+        if (x instanceof Node && y instanceof Node && shift < MAX_SHIFT) {
+            Node nx = (Node) x, ny = (Node) y;
+            if (nx._digest != null && nx._digest.equals(ny._digest)) {
+                return;
+            }
+            for (int bits = nx._bitmap | ny._bitmap; bits != 0;
+                 bits &= bits - 1) {
+                int bit = bits & -bits;
+                changes(child(nx, bit), child(ny, bit), shift + BITS, out);
+            }
+            return;
+        }
+        Map<String, Object> mx = new HashMap<>(), my = new HashMap<>();
+        leaves(x, mx);
+        leaves(y, my);
+        for (Map.Entry<String, Object> e : mx.entrySet()) {
+            if (!e.getValue().equals(my.get(e.getKey()))) {
+                out.add(e.getKey());
+            }
+        }
+        for (String key : my.keySet()) {
+            if (!mx.containsKey(key)) {
+                out.add(key);
+            }
+        }
+    }
+
+    /** Returns the slot of NODE for BIT, or null. */
+    private static Object child(Node node, int bit) {
+        return (node._bitmap & bit) == 0 ? null
+            : node._slots[index(node._bitmap, bit)];
+    }
+
+    /** Adds all leaves in the trie slot SLOT to OUT. */
+    private static void leaves(Object slot, Map<String, Object> out) {
+        if (slot instanceof Leaf) {
+            out.put(((Leaf) slot)._key, ((Leaf) slot)._value);
+        } else if (slot != null) {
+            for (Object s : ((Node) slot)._slots) {
+                leaves(s, out);
+            }
+        }
+    }
+
+    /** Returns the tree hash of NODE, computing it if need be. */
+    private static ObjectId digest(Node node) {
+        if (node._digest == null) {
+            node._digest = contentHash(node);
+        }
+        return node._digest;
+    }
+
+    /** Returns the tree hash of NODE computed from its leaves and the
+     * tree hashes of its children. */
+    private static ObjectId contentHash(Node node) {
+        Object[] parts = new Object[2 * node._slots.length];
+        for (int i = 0; i < node._slots.length; i += 1) {
+            Object slot = node._slots[i];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                parts[2 * i] = "L" + leaf._key.length() + ":" + leaf._key;
+                parts[2 * i + 1] = ":" + leaf._value + "\n";
+            } else {
+                parts[2 * i] = "N";
+                parts[2 * i + 1] = digest((Node) slot).bytes();
+            }
+        }
+        return ObjectId.hash(parts);
+    }
+
+    /** Returns true iff the remembered tree hashes of NODE and the nodes
+     * below it that are not in VERIFIED are correct, adding the nodes
+     * found sound to VERIFIED. */
+    private static boolean verify(Node node, Set<Object> verified) {
+        if (verified.contains(node)) {
+            return true;
+        }
+        for (Object slot : node._slots) {
+            if (slot instanceof Node && !verify((Node) slot, verified)) {
+                return false;
+            }
+        }
+        if (node._digest != null && !node._digest.equals(contentHash(node))) {
+            return false;
+        }
+        verified.add(node);
+        return true;
+    }
+
+    /** Returns the spread hash code of PATH. */
+    private static int hash(String path) {
+        int h = path.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns the bitmap bit selecting HASH at trie level SHIFT. */
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /** Returns the slot index of BIT in a node with BITMAP. */
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    /** An interior trie node. Below MAX_SHIFT, bit I of _bitmap is set iff
+     *  the node has a slot for hash digit I. At MAX_SHIFT the node holds
+     *  leaves whose hashes collide completely, sorted by key. */
+    private static final class Node implements Serializable {
+        /** A node with BITMAP and SLOTS. */
+        Node(int bitmap, Object[] slots) {
+            _bitmap = bitmap;
+            _slots = slots;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toHexString(_bitmap) + Arrays.toString(_slots);
+        }
+
+        /** Occupied hash digits. */
+        private final int _bitmap;
+        /** Leaves and child nodes, in hash-digit order. */
+        private final Object[] _slots;
+        /** Tree hash of this node, or null if not yet computed. */
+        private ObjectId _digest;
+    }
+
+    /** One path and its value. */
+    private static final class Leaf
+        implements Map.Entry<String, Object>, Serializable {
+        /** A leaf mapping KEY to VALUE. */
+        Leaf(String key, Object value) {
+            _key = PathTable.intern(key);
+            _value = value;
+            _hash = hash(key);
+        }
+
+        @Override
+        public String getKey() {
+            return _key;
+        }
+
+        @Override
+        public Object getValue() {
+            return _value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) obj;
+            return _key.equals(e.getKey()) && _value.equals(e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return _key.hashCode() ^ _value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return _key + "=" + _value;
+        }
+
+        /** The path. */
+        private final String _key;
+        /** Its value. */
+        private final Object _value;
+        /** The spread hash of _key. */
+        private final int _hash;
+    }
+
+    /** Depth-first iterator over the leaves of a trie. */
+    private static final class Entries<V>
+        implements Iterator<Map.Entry<String, V>> {
+        /** An iterator over the leaves below ROOT. */
+        Entries(Node root) {
+            if (root != null) {
+                _stack.push(root._slots);
+                _pos.push(0);
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<String, V> next() {
+            if (_next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf result = _next;
+            advance();
+            return (Map.Entry<String, V>) (Map.Entry<String, ?>) result;
+        }
+
+        /** Moves _next to the following leaf. */
+        private void advance() {
+            _next = null;
+            while (!_stack.isEmpty()) {
+                Object[] slots = _stack.peek();
+                int i = _pos.pop();
+                if (i == slots.length) {
+                    _stack.pop();
+                    continue;
+                }
+                _pos.push(i + 1);
+                if (slots[i] instanceof Leaf) {
+                    _next = (Leaf) slots[i];
+                    return;
+                }
+                _stack.push(((Node) slots[i])._slots);
+                _pos.push(0);
+            }
+        }
+
+        /** Slot arrays of the nodes being visited. */
+        private final Deque<Object[]> _stack = new ArrayDeque<>();
+        /** Next slot index in each member of _stack. */
+        private final Deque<Integer> _pos = new ArrayDeque<>();
+        /** The next leaf to return, or null. */
+        private Leaf _next;
+    }
+
+    /** Bits of the hash consumed per trie level. */
+    private static final int BITS = 5;
+
+    /** Mask selecting one hash digit. */
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** Trie level at which all hash bits have been used. */
+    private static final int MAX_SHIFT = 35;
+
+    /** The empty map. */
+    private static final PathMap<Object> EMPTY = new PathMap<>(null, 0);
+
+    /** Root of the trie, or null if empty. */
+    private final Node _root;
+
+    /** Number of entries. */
+    private final int _size;
+}
@@ -0,0 +1,276 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/** A list of .gitignore-style path patterns, compiled into a trie over
+ *  path segments. Matching proceeds one segment at a time from a State,
+ *  so a directory walk computes the state of each directory once and
+ *  steps it for each entry, and can skip a whole subtree as soon as its
+ *  directory matches.
+ *
+ *  Patterns are read one per line. Blank lines and lines starting with #
+ *  are ignored. A leading ! negates a pattern, a trailing / restricts it
+ *  to directories, and a pattern containing any other / is anchored at
+ *  the top of the working directory, while others match at any depth.
+ *  Within a segment, *, ? and [...] have their usual glob meanings; a **
+ *  segment matches any number of segments. The last matching pattern
+ *  decides.
+ *  @author Anh Le & Roberto Romo
+ */
+class PathPatterns {
+
+    /** Returns the patterns in FILE, or no patterns if FILE does not
+     * exist.
+     * @param file A pattern file such as .gitletignore.
+     */
+    static PathPatterns load(File file) {
+        if (!file.isFile()) {
+            return new PathPatterns(new ArrayList<>());
+        }
+        String text =
+            new String(Utils.readContents(file), StandardCharsets.UTF_8);
+        return new PathPatterns(Arrays.asList(text.split("\r?\n")));
+    }
+
+    /** Patterns compiled from LINES.
+     * @param lines Pattern lines.
+     */
+    PathPatterns(List<String> lines) {
+        for (String line : lines) {
+            add(line.trim());
+        }
+    }
+
+    /** Returns true iff there are no patterns. */
+    boolean isEmpty() {
+        return _negated.isEmpty();
+    }
+
+    /** Returns the state before any segment has been matched. */
+    State root() {
+        return new State(closure(Arrays.asList(_root)));
+    }
+
+    /** Returns the state after matching SEGMENT, one component of a path,
+     * from STATE.
+     * @param state State of the enclosing directory.
+     * @param segment Name of the next path component.
+     */
+    State step(State state, String segment) {
+        if (state._nodes.length == 0) {
+            return state;
+        }
+        List<Node> next = new ArrayList<>();
+        for (Node node : state._nodes) {
+            Node child = node._literal.get(segment);
+            if (child != null) {
+                next.add(child);
+            }
+            for (int i = 0; i < node._globs.size(); i += 1) {
+                if (node._globs.get(i).matcher(segment).matches()) {
+                    next.add(node._globChildren.get(i));
+                }
+            }
+            if (node._anyDepth) {
+                next.add(node);
+            }
+        }
+        return new State(closure(next));
+    }
+
+    /** Returns true iff the path whose state is STATE matches these
+     * patterns: the last pattern that applies to it is not negated.
+     * @param state The state after all segments of the path.
+     * @param isDir True iff the path names a directory.
+     */
+    boolean matches(State state, boolean isDir) {
+        int best = -1;
+        for (Node node : state._nodes) {
+            for (int rule : node._rules) {
+                if (rule > best && (isDir || !_dirOnly.get(rule))) {
+                    best = rule;
+                }
+            }
+        }
+        return best >= 0 && !_negated.get(best);
+    }
+
+    /** Returns true iff PATH, or a directory containing it, matches these
+     * patterns.
+     * @param path A path relative to the working directory, using /.
+     */
+    boolean matches(String path) {
+        State state = root();
+        String[] segments = path.split("/");
+        for (int i = 0; i < segments.length; i += 1) {
+            state = step(state, segments[i]);
+            if (matches(state, i < segments.length - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Compiles the pattern LINE. */
+    private void add(String line) {
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        }
+        boolean negated = line.startsWith("!");
+        if (negated) {
+            line = line.substring(1);
+        }
+        boolean dirOnly = line.endsWith("/");
+        while (line.endsWith("/")) {
+            line = line.substring(0, line.length() - 1);
+        }
+        boolean anchored = line.indexOf('/') >= 0;
+        while (line.startsWith("/")) {
+            line = line.substring(1);
+        }
+        if (line.isEmpty()) {
+            return;
+        }
+        if (line.endsWith("/**")) {
+            line = line.substring(0, line.length() - 2) + "*";
+        }
+        Node node = _root;
+        if (!anchored) {
+            node = anyDepth(node);
+        }
+        for (String segment : line.split("/+")) {
+            if (segment.equals("**")) {
+                node = anyDepth(node);
+            } else if (isGlob(segment)) {
+                node = globChild(node, segment);
+            } else {
+                node = node._literal.computeIfAbsent(segment, s -> new Node());
+            }
+        }
+        node._rules.add(_negated.size());
+        _negated.add(negated);
+        _dirOnly.add(dirOnly);
+    }
+
+    /** Returns the node reached from NODE by a ** segment. */
+    private static Node anyDepth(Node node) {
+        if (node._star == null) {
+            node._star = new Node();
+            node._star._anyDepth = true;
+        }
+        return node._star;
+    }
+
+    /** Returns the node reached from NODE by the glob segment GLOB. */
+    private static Node globChild(Node node, String glob) {
+        int i = node._globSources.indexOf(glob);
+        if (i >= 0) {
+            return node._globChildren.get(i);
+        }
+        Node child = new Node();
+        node._globSources.add(glob);
+        node._globs.add(Pattern.compile(toRegex(glob)));
+        node._globChildren.add(child);
+        return child;
+    }
+
+    /** Returns NODES together with all nodes reachable from them through
+     * ** edges, without duplicates. */
+    private static Node[] closure(List<Node> nodes) {
+        Set<Node> result = new LinkedHashSet<>();
+        for (Node node : nodes) {
+            for (Node n = node; n != null && result.add(n); n = n._star) {
+                continue;
+            }
+        }
+        return result.toArray(new Node[result.size()]);
+    }
+
+    /** Returns true iff SEGMENT contains glob characters. */
+    private static boolean isGlob(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0
+            || segment.indexOf('[') >= 0;
+    }
+
+    /** Returns a regular expression equivalent to the segment glob GLOB. */
+    private static String toRegex(String glob) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < glob.length(); i += 1) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                result.append(".*");
+            } else if (c == '?') {
+                result.append(".");
+            } else if (c == '[') {
+                int end = glob.indexOf(']', i + 2);
+                if (end < 0) {
+                    result.append("\\[");
+                } else {
+                    String set = glob.substring(i + 1, end);
+                    if (set.startsWith("!")) {
+                        set = "^" + set.substring(1);
+                    }
+                    result.append('[').append(set.replace("\\", "\\\\"))
+                        .append(']');
+                    i = end;
+                }
+            } else {
+                result.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return result.toString();
+    }
+
+    /** A set of trie positions reached after matching some segments. */
+    static final class State {
+        /** A state holding NODES. */
+        private State(Node[] nodes) {
+            _nodes = nodes;
+        }
+
+        /** Returns true iff no pattern can match below this state, so a
+         * walk may stop stepping it. */
+        boolean isDead() {
+            return _nodes.length == 0;
+        }
+
+        /** The trie positions. */
+        private final Node[] _nodes;
+    }
+
+    /** A trie node: the position after some segments of a pattern. */
+    private static final class Node {
+        /** Children by literal segment. */
+        private final Map<String, Node> _literal = new HashMap<>();
+        /** Glob segments leading to _globChildren. */
+        private final List<String> _globSources = new ArrayList<>();
+        /** Compiled forms of _globSources. */
+        private final List<Pattern> _globs = new ArrayList<>();
+        /** Children by glob segment. */
+        private final List<Node> _globChildren = new ArrayList<>();
+        /** Node reached by a ** segment, or null. */
+        private Node _star;
+        /** True iff this node follows a ** and so matches any segment. */
+        private boolean _anyDepth;
+        /** Indices of the patterns that end at this node. */
+        private final List<Integer> _rules = new ArrayList<>();
+    }
+
+    /** The root of the trie. */
+    private final Node _root = new Node();
+
+    /** Whether each pattern, by index, is negated. */
+    private final List<Boolean> _negated = new ArrayList<>();
+
+    /** Whether each pattern, by index, applies only to directories. */
+    private final List<Boolean> _dirOnly = new ArrayList<>();
+}
@@ -0,0 +1,36 @@
+package gitlet;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/** Interning table for the paths held in commit blob maps, so that each
+ *  distinct path is one String no matter how many commits track it. The
+ *  table holds its paths weakly: a path no longer tracked by any loaded
+ *  commit is dropped, so a long-lived process does not accumulate the
+ *  paths of every repository it has opened.
+ *  @author Anh Le & Roberto Romo
+ */
+final class PathTable {
+
+    /** Not instantiable. */
+    private PathTable() {
+    }
+
+    /** Returns the canonical String equal to PATH.
+     * @param path A path relative to the working directory.
+     */
+    static synchronized String intern(String path) {
+        WeakReference<String> ref = PATHS.get(path);
+        String result = ref == null ? null : ref.get();
+        if (result == null) {
+            PATHS.put(path, new WeakReference<>(path));
+            result = path;
+        }
+        return result;
+    }
+
+    /** The canonical paths, each referring weakly to itself. */
+    private static final Map<String, WeakReference<String>> PATHS =
+        new WeakHashMap<>();
+}
@@ -0,0 +1,188 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The log of the values a branch or HEAD has held, newest last. The log
+ *  is a directory of append-only segment files, named by sequence number,
+ *  each holding one line per move: the old and new commit ids, the time
+ *  in seconds since the epoch and the command that made the move. A
+ *  segment is closed once it reaches SEGMENT_SIZE bytes, and only the
+ *  newest MAX_SEGMENTS segments are kept, so a log stays bounded however
+ *  long it runs. Recording a move appends one line, and the latest moves
+ *  are read from the newest segments alone.
+ *  @author Anh Le & Roberto Romo
+ */
+class Reflog {
+
+    /** One move of a ref. */
+    static class Entry {
+
+        /** A move from OLD to NOW at TIME, made by MESSAGE.
+         * @param old The previous commit id, or null for a new ref.
+         * @param now The new commit id, or null for a deleted ref.
+         * @param time Seconds since the epoch.
+         * @param message Description of the move.
+         */
+        Entry(ObjectId old, ObjectId now, long time, String message) {
+            _old = old;
+            _now = now;
+            _time = time;
+            _message = message;
+        }
+
+        /** Returns the previous commit id, or null for a new ref. */
+        ObjectId old() {
+            return _old;
+        }
+
+        /** Returns the new commit id, or null for a deleted ref. */
+        ObjectId now() {
+            return _now;
+        }
+
+        /** Returns the time of the move, in seconds since the epoch. */
+        long time() {
+            return _time;
+        }
+
+        /** Returns the description of the move. */
+        String message() {
+            return _message;
+        }
+
+        /** The previous commit id. */
+        private final ObjectId _old;
+
+        /** The new commit id. */
+        private final ObjectId _now;
+
+        /** Seconds since the epoch. */
+        private final long _time;
+
+        /** Description of the move. */
+        private final String _message;
+    }
+
+    /** The log whose segments are in DIR.
+     * @param dir A directory, which need not exist yet.
+     */
+    Reflog(File dir) {
+        _dir = dir;
+    }
+
+    /** Appends ENTRY to the log, starting a new segment, and dropping the
+     * oldest, if the newest is full.
+     * @param entry A move of the ref.
+     */
+    void append(Entry entry) {
+        String line = hex(entry.old()) + " " + hex(entry.now()) + " "
+            + entry.time() + " "
+            + entry.message().replace('\n', ' ') + "\n";
+        int[] segments = segments();
+        int last = segments.length == 0 ? 0 : segments[segments.length - 1];
+        File file = segment(last);
+        if (last == 0 || file.length() >= SEGMENT_SIZE) {
+            _dir.mkdirs();
+            for (int i = 0; i <= segments.length - MAX_SEGMENTS; i += 1) {
+                segment(segments[i]).delete();
+            }
+            file = segment(last + 1);
+        }
+        try {
+            Files.write(file.toPath(), line.getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the latest N entries of the log, newest first.
+     * @param n The largest number of entries wanted.
+     */
+    List<Entry> latest(int n) {
+        List<Entry> result = new ArrayList<>();
+        int[] segments = segments();
+        for (int i = segments.length - 1; i >= 0 && result.size() < n;
+             i -= 1) {
+            String[] lines = new String(Utils.readContents(segment(
+                segments[i])), StandardCharsets.UTF_8).split("\n");
+            for (int k = lines.length - 1; k >= 0 && result.size() < n;
+                 k -= 1) {
+                Entry entry = parse(lines[k]);
+                if (entry != null) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the sequence numbers of the segments, in increasing order.
+     */
+    private int[] segments() {
+        String[] names = _dir.list();
+        if (names == null) {
+            return new int[0];
+        }
+        int[] result = new int[names.length];
+        int n = 0;
+        for (String name : names) {
+            try {
+                result[n] = Integer.parseInt(name);
+                n += 1;
+            } catch (NumberFormatException excp) {
+                continue;
+            }
+        }
+        result = Arrays.copyOf(result, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Returns the file of segment number SEQ. */
+    private File segment(int seq) {
+        return new File(_dir, String.format("%08d", seq));
+    }
+
+    /** Returns the entry on LINE, or null if LINE is malformed. */
+    private static Entry parse(String line) {
+        String[] fields = line.split(" ", 4);
+        if (fields.length < 4) {
+            return null;
+        }
+        try {
+            return new Entry(live(ObjectId.parse(fields[0])),
+                             live(ObjectId.parse(fields[1])),
+                             Long.parseLong(fields[2]), fields[3]);
+        } catch (NumberFormatException excp) {
+            return null;
+        }
+    }
+
+    /** Returns the hex form of ID, using the zero id for null. */
+    private static String hex(ObjectId id) {
+        return (id == null ? ObjectId.zero() : id).toString();
+    }
+
+    /** Returns ID, or null if it is the zero id. */
+    private static ObjectId live(ObjectId id) {
+        return id != null && id.isZero() ? null : id;
+    }
+
+    /** Size at which a segment is closed. */
+    static final int SEGMENT_SIZE = 16 << 10;
+
+    /** Most segments kept. */
+    static final int MAX_SEGMENTS = 8;
+
+    /** The directory holding the segments. */
+    private final File _dir;
+}
@@ -0,0 +1,426 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/** The branches of a repository, kept outside gitlet.ser as small records
+ *  mapping each branch name to the id of its head commit. A branch changed
+ *  recently has a loose ref: a file in .gitlet/refs, named by the
+ *  URL-encoded branch name, that holds the commit id. Once there would be
+ *  more than LOOSE_LIMIT loose refs, they are consolidated into
+ *  .gitlet/packed-refs, which has one "ID NAME" line per branch, sorted by
+ *  name. A single branch is found there by binary search, and the branches
+ *  with a common prefix are one run of lines. A loose ref holding the zero
+ *  id marks a packed branch as deleted.
+ *
+ *  Creating, moving or deleting a branch thus writes one small file, and
+ *  appends one line to the branch's Reflog in .gitlet/logs/refs. Changes
+ *  are held in memory until save, which the repository calls once the
+ *  commits they refer to have been saved.
+ *  @author Anh Le & Roberto Romo
+ */
+class Refs {
+
+    /** The branches of the repository whose metadata is in DIR, whose
+     * commits are found with COMMITS.
+     * @param dir The .gitlet directory, or null for a repository not yet
+     * saved.
+     * @param commits Finds a commit by id, or returns null.
+     */
+    Refs(File dir, Function<ObjectId, Commit> commits) {
+        _dir = dir;
+        _commits = commits;
+    }
+
+    /** Returns true iff branch NAME exists.
+     * @param name A branch name.
+     */
+    boolean containsKey(String name) {
+        return id(name) != null;
+    }
+
+    /** Returns branch NAME, or null if it does not exist.
+     * @param name A branch name.
+     */
+    Branch get(String name) {
+        ObjectId id = id(name);
+        return id == null ? null : new Branch(name, _commits.apply(id));
+    }
+
+    /** Returns the id of the head commit of branch NAME, or null if it does
+     * not exist.
+     * @param name A branch name.
+     */
+    ObjectId id(String name) {
+        if (_changes.containsKey(name)) {
+            return _changes.get(name);
+        } else if (_read.containsKey(name)) {
+            return _read.get(name);
+        }
+        ObjectId id = null;
+        if (_dir != null) {
+            File loose = looseFile(_dir, name);
+            if (loose.isFile()) {
+                id = live(readId(loose));
+            } else {
+                id = packed(name);
+            }
+        }
+        _read.put(name, id);
+        return id;
+    }
+
+    /** Makes BRANCH the branch called NAME, replacing any branch of that
+     * name.
+     * @param name A branch name.
+     * @param branch The new branch.
+     */
+    void put(String name, Branch branch) {
+        move(name, branch.commit().sha());
+    }
+
+    /** Points branch NAME at the commit ID, creating it if need be.
+     * @param name A branch name.
+     * @param id A commit id.
+     */
+    void put(String name, ObjectId id) {
+        move(name, id);
+    }
+
+    /** Deletes branch NAME.
+     * @param name A branch name.
+     */
+    void remove(String name) {
+        move(name, null);
+    }
+
+    /** Sets the description logged for the changes that follow to REASON,
+     * normally the command that makes them.
+     * @param reason Description of later moves.
+     */
+    void reason(String reason) {
+        _reason = reason;
+    }
+
+    /** Returns the log of the moves of branch NAME, which includes the
+     * moves of a deleted branch of that name.
+     * @param name A branch name.
+     */
+    Reflog log(String name) {
+        return new Reflog(new File(new File(new File(_dir, "logs"), "refs"),
+                                   URLEncoder.encode(name,
+                                                     StandardCharsets.UTF_8)));
+    }
+
+    /** Points branch NAME at commit ID, or deletes it if ID is null. */
+    private void move(String name, ObjectId id) {
+        ObjectId old = id(name);
+        if (!Objects.equals(old, id)) {
+            _moves.add(new AbstractMap.SimpleEntry<>(name,
+                new Reflog.Entry(old, id, System.currentTimeMillis() / 1000,
+                                 _reason)));
+        }
+        _changes.put(name, id);
+    }
+
+    /** Returns the head commit ids of the branches whose names start with
+     * PREFIX, by branch name in sorted order.
+     * @param prefix A prefix of branch names.
+     */
+    Map<String, ObjectId> ids(String prefix) {
+        TreeMap<String, ObjectId> recent = new TreeMap<>();
+        if (_dir != null) {
+            String[] loose = new File(_dir, "refs").list();
+            for (String file : loose == null ? new String[0] : loose) {
+                String name = URLDecoder.decode(file, StandardCharsets.UTF_8);
+                if (name.startsWith(prefix) && !file.endsWith(TMP)) {
+                    recent.put(name, live(readId(new File(new File(_dir,
+                        "refs"), file))));
+                }
+            }
+        }
+        for (Map.Entry<String, ObjectId> e : _changes.entrySet()) {
+            if (e.getKey().startsWith(prefix)) {
+                recent.put(e.getKey(), e.getValue());
+            }
+        }
+        Map<String, ObjectId> result = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, ObjectId>> changed =
+            recent.entrySet().iterator();
+        Map.Entry<String, ObjectId> next = changed.hasNext()
+            ? changed.next() : null;
+        ByteBuffer packed = packed();
+        for (int pos = lowerBound(packed, prefix); pos < packed.limit();
+             pos = lineEnd(packed, pos) + 1) {
+            String name = name(packed, pos);
+            if (!name.startsWith(prefix)) {
+                break;
+            }
+            for (; next != null && next.getKey().compareTo(name) <= 0;
+                 next = changed.hasNext() ? changed.next() : null) {
+                if (next.getValue() != null) {
+                    result.put(next.getKey(), next.getValue());
+                }
+            }
+            if (!recent.containsKey(name)) {
+                result.put(name, id(packed, pos));
+            }
+        }
+        for (; next != null;
+             next = changed.hasNext() ? changed.next() : null) {
+            if (next.getValue() != null) {
+                result.put(next.getKey(), next.getValue());
+            }
+        }
+        return result;
+    }
+
+    /** Returns all the branches, sorted by name. */
+    List<Branch> values() {
+        List<Branch> result = new ArrayList<>();
+        for (Map.Entry<String, ObjectId> e : ids("").entrySet()) {
+            result.add(new Branch(e.getKey(), _commits.apply(e.getValue())));
+        }
+        return result;
+    }
+
+    /** Writes the changes made since the last save as loose refs in DIR,
+     * or consolidates all refs into its packed-refs if that would leave
+     * too many loose refs.
+     * @param dir The .gitlet directory of the repository.
+     */
+    void save(File dir) {
+        if (!dir.equals(_dir)) {
+            _dir = dir;
+            _packed = null;
+            _read.clear();
+        }
+        if (_changes.isEmpty()) {
+            return;
+        }
+        File refs = new File(dir, "refs");
+        refs.mkdirs();
+        String[] loose = refs.list();
+        if ((loose == null ? 0 : loose.length) + _changes.size()
+                > LOOSE_LIMIT) {
+            pack();
+        } else {
+            for (Map.Entry<String, ObjectId> e : _changes.entrySet()) {
+                File file = looseFile(dir, e.getKey());
+                if (e.getValue() != null) {
+                    writeAtomically(file, (e.getValue() + "\n").getBytes());
+                } else if (packed(e.getKey()) != null) {
+                    writeAtomically(file,
+                                    (ObjectId.zero() + "\n").getBytes());
+                } else {
+                    file.delete();
+                }
+            }
+            Utils.sync(refs);
+            _read.putAll(_changes);
+            _changes.clear();
+        }
+        for (Map.Entry<String, Reflog.Entry> move : _moves) {
+            log(move.getKey()).append(move.getValue());
+        }
+        _moves.clear();
+    }
+
+    /** Rewrites packed-refs with every branch, including unsaved changes,
+     * and removes the loose refs. */
+    private void pack() {
+        Map<String, ObjectId> all = ids("");
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, ObjectId> e : all.entrySet()) {
+            text.append(e.getValue()).append(' ').append(e.getKey())
+                .append('\n');
+        }
+        writeAtomically(new File(_dir, "packed-refs"),
+                        text.toString().getBytes(StandardCharsets.UTF_8));
+        Utils.sync(_dir);
+        File refs = new File(_dir, "refs");
+        String[] loose = refs.list();
+        for (String file : loose == null ? new String[0] : loose) {
+            new File(refs, file).delete();
+        }
+        _packed = null;
+        _read.clear();
+        _read.putAll(all);
+        _changes.clear();
+    }
+
+    /** Returns the id of NAME in packed-refs, or null if it has none. */
+    private ObjectId packed(String name) {
+        ByteBuffer packed = packed();
+        int pos = lowerBound(packed, name);
+        return pos < packed.limit() && name(packed, pos).equals(name)
+            ? id(packed, pos) : null;
+    }
+
+    /** Returns the contents of packed-refs, mapped into memory on first
+     * use, or an empty buffer if there is none. */
+    private ByteBuffer packed() {
+        if (_packed == null) {
+            File file = new File(_dir, "packed-refs");
+            _packed = ByteBuffer.allocate(0);
+            if (_dir != null && file.isFile()) {
+                try (FileChannel channel = FileChannel.open(
+                         file.toPath(), StandardOpenOption.READ)) {
+                    _packed = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                          channel.size());
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return _packed;
+    }
+
+    /** Returns the offset in PACKED of the first line whose name is not
+     * less than NAME, or its limit if there is none. */
+    private static int lowerBound(ByteBuffer packed, String name) {
+        int lo = 0;
+        int hi = packed.limit();
+        while (lo < hi) {
+            int mid = lo + (hi - lo) / 2;
+            while (mid > lo && packed.get(mid - 1) != '\n') {
+                mid -= 1;
+            }
+            if (name(packed, mid).compareTo(name) < 0) {
+                lo = lineEnd(packed, mid) + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the offset of the newline ending the line of PACKED that
+     * starts at POS. */
+    private static int lineEnd(ByteBuffer packed, int pos) {
+        int end = pos;
+        while (end < packed.limit() && packed.get(end) != '\n') {
+            end += 1;
+        }
+        return end;
+    }
+
+    /** Returns the offset of the space ending the id on the line of PACKED
+     * that starts at POS. */
+    private static int idEnd(ByteBuffer packed, int pos) {
+        int end = pos;
+        while (end < packed.limit() && packed.get(end) != ' '
+               && packed.get(end) != '\n') {
+            end += 1;
+        }
+        return end;
+    }
+
+    /** Returns the branch name on the line of PACKED starting at POS. */
+    private static String name(ByteBuffer packed, int pos) {
+        int start = idEnd(packed, pos) + 1;
+        byte[] name = new byte[Math.max(0, lineEnd(packed, pos) - start)];
+        for (int i = 0; i < name.length; i += 1) {
+            name[i] = packed.get(start + i);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the commit id on the line of PACKED starting at POS. */
+    private static ObjectId id(ByteBuffer packed, int pos) {
+        byte[] hex = new byte[idEnd(packed, pos) - pos];
+        for (int i = 0; i < hex.length; i += 1) {
+            hex[i] = packed.get(pos + i);
+        }
+        return ObjectId.parse(new String(hex, StandardCharsets.US_ASCII));
+    }
+
+    /** Returns the loose ref file for branch NAME in the .gitlet directory
+     * DIR. */
+    private static File looseFile(File dir, String name) {
+        return new File(new File(dir, "refs"),
+                        URLEncoder.encode(name, StandardCharsets.UTF_8));
+    }
+
+    /** Returns the id held by the loose ref FILE. */
+    private static ObjectId readId(File file) {
+        ObjectId id = ObjectId.parse(new String(Utils.readContents(file),
+                                                StandardCharsets.US_ASCII)
+                                     .trim());
+        if (id == null) {
+            throw new IllegalArgumentException("bad ref: " + file);
+        }
+        return id;
+    }
+
+    /** Returns ID, or null if it is the zero id of a deleted branch. */
+    private static ObjectId live(ObjectId id) {
+        return id != null && id.isZero() ? null : id;
+    }
+
+    /** Replaces FILE with one holding CONTENTS, synced before it is renamed
+     * into place. */
+    private static void writeAtomically(File file, byte[] contents) {
+        File tmp = new File(file.getPath() + TMP);
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(contents);
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Most loose refs kept before they are packed. */
+    static final int LOOSE_LIMIT = 64;
+
+    /** Suffix of a file being written, which URL encoding never yields. */
+    private static final String TMP = "~";
+
+    /** The .gitlet directory, or null before the first save. */
+    private File _dir;
+
+    /** Finds commits by id. */
+    private final Function<ObjectId, Commit> _commits;
+
+    /** Description of the moves being made. */
+    private String _reason = "";
+
+    /** Moves made since the last save, by branch name, oldest first. */
+    private final List<Map.Entry<String, Reflog.Entry>> _moves =
+        new ArrayList<>();
+
+    /** Branches changed since the last save; null marks a deletion. */
+    private final Map<String, ObjectId> _changes = new LinkedHashMap<>();
+
+    /** Branches already looked up; null marks one that does not exist. */
+    private final Map<String, ObjectId> _read = new HashMap<>();
+
+    /** The mapped contents of packed-refs, once read. */
+    private ByteBuffer _packed;
+}
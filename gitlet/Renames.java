@@ -0,0 +1,340 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/** The files that moved or were copied between two versions of the files.
+ *  A file that disappears from the older version and a file that appears
+ *  in the newer one are paired as a rename when their contents are at
+ *  least THRESHOLD percent alike, and a new file may also be paired, as a
+ *  copy, with a file that changed.
+ *
+ *  Pairs are found in two passes, neither of which compares every source
+ *  with every target. Files with identical contents are paired first by
+ *  blob id alone. For the rest, each file's lines are summarized by a
+ *  MinHash sketch, whose agreement estimates how alike two files are, and
+ *  the sketches are bucketed in bands so that only files sharing a band
+ *  are ever compared. Both passes take time roughly linear in the number
+ *  of files involved.
+ *  @author Anh Le & Roberto Romo
+ */
+class Renames {
+
+    /** A file of the newer version paired with its source in the older. */
+    static class Rename {
+
+        /** A pair from FROM to TO, SCORE percent alike, which is a COPY if
+         * FROM remains.
+         * @param from Path in the older version.
+         * @param to Path in the newer version.
+         * @param score Percent similarity, 100 if identical.
+         * @param copy True iff FROM is not removed.
+         */
+        Rename(String from, String to, int score, boolean copy) {
+            _from = from;
+            _to = to;
+            _score = score;
+            _copy = copy;
+        }
+
+        /** Returns the path in the older version. */
+        String from() {
+            return _from;
+        }
+
+        /** Returns the path in the newer version. */
+        String to() {
+            return _to;
+        }
+
+        /** Returns the similarity in percent, 100 if identical. */
+        int score() {
+            return _score;
+        }
+
+        /** Returns true iff this is a copy rather than a rename. */
+        boolean copy() {
+            return _copy;
+        }
+
+        /** Path in the older version. */
+        private final String _from;
+
+        /** Path in the newer version. */
+        private final String _to;
+
+        /** Similarity in percent. */
+        private final int _score;
+
+        /** True iff the source remains. */
+        private final boolean _copy;
+    }
+
+    /** Finds the renames and copies from OLDER to NEWER among the paths
+     * CHANGED between them, reading contents through OLDCONTENTS and
+     * NEWCONTENTS only for files not paired by id.
+     * @param older The older version's blob map.
+     * @param newer The newer version's blob map.
+     * @param changed The paths whose blobs differ between the two.
+     * @param oldContents Returns the contents of a path in OLDER.
+     * @param newContents Returns the contents of a path in NEWER.
+     * @param threshold Least similarity, in percent, of a pair.
+     */
+    Renames(PathMap<ObjectId> older, PathMap<ObjectId> newer,
+            Collection<String> changed, Function<String, byte[]> oldContents,
+            Function<String, byte[]> newContents, int threshold) {
+        List<String> deleted = new ArrayList<>();
+        List<String> modified = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        for (String path : changed) {
+            if (newer.get(path) == null) {
+                deleted.add(path);
+            } else if (older.get(path) == null) {
+                added.add(path);
+            } else {
+                modified.add(path);
+            }
+        }
+        if (added.isEmpty() || deleted.isEmpty() && modified.isEmpty()) {
+            return;
+        }
+        _deleted.addAll(deleted);
+        ObjectId empty = ObjectId.hash(new byte[0]);
+        Map<ObjectId, Deque<String>> byId = new HashMap<>();
+        for (List<String> sources : List.of(deleted, modified)) {
+            for (String path : sources) {
+                ObjectId id = older.get(path);
+                if (!id.equals(empty)) {
+                    byId.computeIfAbsent(id, k -> new ArrayDeque<>())
+                        .addLast(path);
+                }
+            }
+        }
+        List<String> targets = new ArrayList<>();
+        for (String path : added) {
+            Deque<String> sources = byId.get(newer.get(path));
+            if (sources == null) {
+                targets.add(path);
+            } else {
+                String from = sources.peekFirst();
+                if (_deleted.contains(from) && !_used.contains(from)) {
+                    sources.addLast(sources.removeFirst());
+                }
+                pair(from, path, 100);
+            }
+        }
+        List<String> sources = new ArrayList<>();
+        for (List<String> paths : List.of(deleted, modified)) {
+            for (String path : paths) {
+                if (!_used.contains(path)) {
+                    sources.add(path);
+                }
+            }
+        }
+        if (!targets.isEmpty() && !sources.isEmpty()) {
+            near(sources, targets, oldContents, newContents, threshold);
+        }
+        _renames.sort(Comparator.comparing(Rename::to));
+    }
+
+    /** Returns the renames and copies found, in order of their new paths.
+     */
+    List<Rename> renames() {
+        return Collections.unmodifiableList(_renames);
+    }
+
+    /** Returns the similarity threshold, in percent, given by the option
+     * ARG, which is -M or -M followed by a percentage, or -1 if ARG is not
+     * such an option.
+     * @param arg An operand.
+     */
+    static int threshold(String arg) {
+        if (arg.equals("-M")) {
+            return DEFAULT_THRESHOLD;
+        } else if (!arg.startsWith("-M") || arg.length() > 5) {
+            return -1;
+        }
+        try {
+            int result = Integer.parseInt(arg.substring(2));
+            return result >= 0 && result <= 100 ? result : -1;
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+    }
+
+    /** Pairs each of TARGETS with the most similar of SOURCES, if it is at
+     * least THRESHOLD percent alike, comparing only files whose sketches
+     * share a band. Contents come from OLDCONTENTS and NEWCONTENTS. */
+    private void near(List<String> sources, List<String> targets,
+                      Function<String, byte[]> oldContents,
+                      Function<String, byte[]> newContents, int threshold) {
+        long[][] from = sources.parallelStream()
+            .map(p -> sketch(oldContents.apply(p))).toArray(long[][]::new);
+        long[][] to = targets.parallelStream()
+            .map(p -> sketch(newContents.apply(p))).toArray(long[][]::new);
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        for (int s = 0; s < from.length; s += 1) {
+            if (from[s] == null) {
+                continue;
+            }
+            for (int band = 0; band < BANDS; band += 1) {
+                List<Integer> bucket = buckets.computeIfAbsent(
+                    band(from[s], band), k -> new ArrayList<>());
+                if (bucket.size() < MAX_BUCKET) {
+                    bucket.add(s);
+                }
+            }
+        }
+        List<int[]> pairs = new ArrayList<>();
+        for (int t = 0; t < to.length; t += 1) {
+            if (to[t] == null) {
+                continue;
+            }
+            Set<Integer> seen = new HashSet<>();
+            for (int band = 0; band < BANDS; band += 1) {
+                for (int s : buckets.getOrDefault(band(to[t], band),
+                                                  List.of())) {
+                    if (!seen.add(s) || !sizesAllow(from[s], to[t],
+                                                    threshold)) {
+                        continue;
+                    }
+                    int score = score(from[s], to[t]);
+                    if (score >= threshold) {
+                        pairs.add(new int[] { score, s, t });
+                    }
+                }
+            }
+        }
+        pairs.sort((x, y) -> x[0] != y[0] ? y[0] - x[0]
+                   : x[2] != y[2] ? x[2] - y[2] : x[1] - y[1]);
+        Set<Integer> paired = new HashSet<>();
+        for (int[] p : pairs) {
+            if (paired.add(p[2])) {
+                pair(sources.get(p[1]), targets.get(p[2]), p[0]);
+            }
+        }
+    }
+
+    /** Records that TO came from FROM, SCORE percent alike. */
+    private void pair(String from, String to, int score) {
+        boolean copy = !_deleted.contains(from) || !_used.add(from);
+        _renames.add(new Rename(from, to, score, copy));
+    }
+
+    /** Returns the MinHash sketch of the lines of CONTENTS, followed by
+     * its length, or null if CONTENTS is empty or missing. Each of the
+     * first SKETCH entries is the least value of one hash function over
+     * the lines, so two sketches agree in a fraction of their entries
+     * that estimates the fraction of lines the files share. */
+    private static long[] sketch(byte[] contents) {
+        if (contents == null || contents.length == 0) {
+            return null;
+        }
+        long[] result = new long[SKETCH + 1];
+        Arrays.fill(result, 0, SKETCH, Long.MAX_VALUE);
+        for (String line : new String(contents, StandardCharsets.ISO_8859_1)
+                 .split("\n")) {
+            long h = fnv(line);
+            for (int i = 0; i < SKETCH; i += 1) {
+                long v = mix(h + SEEDS[i]);
+                if (v < result[i]) {
+                    result[i] = v;
+                }
+            }
+        }
+        result[SKETCH] = contents.length;
+        return result;
+    }
+
+    /** Returns the percentage of the entries of sketches X and Y that
+     * agree. */
+    private static int score(long[] x, long[] y) {
+        int agree = 0;
+        for (int i = 0; i < SKETCH; i += 1) {
+            if (x[i] == y[i]) {
+                agree += 1;
+            }
+        }
+        return agree * 100 / SKETCH;
+    }
+
+    /** Returns false if the files sketched by X and Y differ so much in
+     * size that they cannot be THRESHOLD percent alike. */
+    private static boolean sizesAllow(long[] x, long[] y, int threshold) {
+        long small = Math.min(x[SKETCH], y[SKETCH]);
+        long large = Math.max(x[SKETCH], y[SKETCH]);
+        return small * 100 >= large * threshold;
+    }
+
+    /** Returns the bucket key of band BAND of sketch S. */
+    private static long band(long[] s, int band) {
+        long key = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i += 1) {
+            key = mix(key * 31 + s[i]);
+        }
+        return key;
+    }
+
+    /** Returns the 64-bit FNV-1a hash of the characters of LINE, each of
+     * which is a byte. */
+    private static long fnv(String line) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < line.length(); i += 1) {
+            h = (h ^ line.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Returns a well-mixed hash of X, by the finalizer of SplitMix64. */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** Similarity threshold, in percent, when none is given. */
+    static final int DEFAULT_THRESHOLD = 50;
+
+    /** Number of hash functions in a sketch. */
+    private static final int SKETCH = 32;
+
+    /** Sketch entries per band. */
+    private static final int ROWS = 2;
+
+    /** Bands per sketch. */
+    private static final int BANDS = SKETCH / ROWS;
+
+    /** Most sources compared through one bucket, so that files that share
+     * common lines cannot make the comparison quadratic. */
+    private static final int MAX_BUCKET = 64;
+
+    /** Offsets that turn mix into SKETCH different hash functions. */
+    private static final long[] SEEDS = new long[SKETCH];
+
+    static {
+        for (int i = 0; i < SKETCH; i += 1) {
+            SEEDS[i] = mix(0x9e3779b97f4a7c15L * (i + 1));
+        }
+    }
+
+    /** Renames and copies found. */
+    private final List<Rename> _renames = new ArrayList<>();
+
+    /** Paths removed from the older version. */
+    private final Set<String> _deleted = new HashSet<>();
+
+    /** Removed paths already paired as renames. */
+    private final Set<String> _used = new HashSet<>();
+}
@@ -0,0 +1,942 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/** A gitlet repository opened in-process, for programs that would
+ *  otherwise run one gitlet command per JVM. It reads and writes the same
+ *  files as the command line, and its results are values rather than
+ *  printed lines: a failure throws a GitletException whose message is
+ *  what the command line would have printed.
+ *
+ *  A Repository may be shared by any number of threads. The commands that
+ *  change it run one at a time, and each ends by publishing a new
+ *  Snapshot, an immutable view of the branches, head commit and staging
+ *  area. Reads work from the snapshot current when they start, without
+ *  locking, so they run concurrently with each other and with a change in
+ *  progress, and never see half of one. Changes made by other processes
+ *  while a Repository is open are not seen.
+ *
+ *  Paths are relative to the working directory, with / as the separator.
+ *  Linked worktrees cannot be opened, and every repository opened in one
+ *  process must use the same hash algorithm.
+ *
+ *  The command line runs its add, rm, commit, checkout, merge, status and
+ *  log commands through a Repository made around the state it has loaded,
+ *  which it saves in its own way.
+ *  @author Anh Le & Roberto Romo
+ */
+public final class Repository {
+
+    /** Returns the repository whose working directory is DIR.
+     * @param dir The working directory of an initialized repository.
+     */
+    public static Repository open(File dir) {
+        File gitletDir = new File(dir, ".gitlet");
+        File glFile = new File(dir, "gitlet.ser");
+        if (gitletDir.isFile()) {
+            throw new GitletException("Cannot open a linked worktree.");
+        } else if (!gitletDir.isDirectory() || !glFile.isFile()) {
+            throw new GitletException("Not in an initialized gitlet "
+                                      + "directory");
+        }
+        useFormat(HashAlgorithm.of(gitletDir));
+        return new Repository(dir, read(glFile));
+    }
+
+    /** Returns the repository state saved in GLFILE. */
+    private static Main read(File glFile) {
+        try {
+            return Main.read(glFile);
+        } catch (IOException | ClassNotFoundException
+                 | ClassCastException excp) {
+            throw new GitletException("The repository state in gitlet.ser "
+                                      + "is unreadable; run fsck.");
+        }
+    }
+
+    /** Creates a repository using SHA-1 in DIR, with a master branch
+     * holding only an initial commit, and returns it.
+     * @param dir The working directory, which must not have a .gitlet.
+     */
+    public static Repository init(File dir) {
+        return init(dir, HashAlgorithm.SHA1);
+    }
+
+    /** Creates a repository in DIR whose objects are named by FORMAT,
+     * with a master branch holding only an initial commit, and returns it.
+     * @param dir The working directory, which must not have a .gitlet.
+     * @param format The hash algorithm of the new repository.
+     */
+    public static Repository init(File dir, HashAlgorithm format) {
+        File gitletDir = new File(dir, ".gitlet");
+        if (gitletDir.exists()) {
+            throw new GitletException("A gitlet version-control system "
+                    + "already exists in the current directory.");
+        }
+        useFormat(format);
+        gitletDir.mkdirs();
+        format.record(gitletDir);
+        Main state = new Main();
+        state.refs().reason("init");
+        state.start();
+        Main.write(state, new File(dir, "gitlet.ser"));
+        new Reflog(new File(new File(gitletDir, "logs"), "HEAD"))
+            .append(new Reflog.Entry(null, state.head().sha(),
+                                     System.currentTimeMillis() / 1000,
+                                     "init"));
+        return open(dir);
+    }
+
+    /** A repository whose working directory is DIR and whose saved state
+     * is STATE. */
+    private Repository(File dir, Main state) {
+        this(dir, new File(dir, ".gitlet"), new File(dir, ".gitlet"), null,
+             state, new ObjectStore(new File(new File(dir, ".gitlet"),
+                                             "blobs")), null);
+        _store.recover();
+        _snapshot = capture();
+    }
+
+    /** A repository whose working directory is DIR, which may be a linked
+     * worktree, for the command line.
+     * @param dir The working directory.
+     * @param gitletDir The .gitlet directory of the main working directory.
+     * @param stateDir The directory of DIR's own state, such as its
+     * sparse-checkout patterns.
+     * @param worktree The name of DIR as a linked worktree, or null.
+     * @param state The loaded state of DIR.
+     * @param store The blob store.
+     * @param saver Saves STATE, or null to write it to DIR's gitlet.ser.
+     * The first snapshot is taken when it is first needed, since STATE
+     * may hold only the branches.
+     */
+    Repository(File dir, File gitletDir, File stateDir, String worktree,
+               Main state, ObjectStore store, Runnable saver) {
+        _dir = dir.getAbsoluteFile();
+        _gitletDir = gitletDir;
+        _worktree = worktree;
+        _state = state;
+        _store = store;
+        _saver = saver;
+        File sparse = new File(stateDir, "sparse-checkout");
+        _sparse = sparse.isFile() ? PathPatterns.load(sparse) : null;
+        _state.useStore(_store);
+        for (Commit commit : state.allCommits()) {
+            _commits.put(commit.sha(), commit);
+        }
+    }
+
+    /** Returns the working directory. */
+    public File directory() {
+        return _dir;
+    }
+
+    /** Returns the current state of the branches and staging area. */
+    public Snapshot snapshot() {
+        synchronized (_lock) {
+            if (_snapshot == null) {
+                _snapshot = capture();
+            }
+        }
+        return _snapshot;
+    }
+
+    /** Returns the commits from the current head commit back to the
+     * initial commit, newest first. */
+    public Iterator<CommitInfo> log() {
+        return snapshot().log();
+    }
+
+    /** Compares the working directory with the current snapshot, as the
+     * status command does. */
+    public Status status() {
+        Snapshot snap = snapshot();
+        PathMap<ObjectId> head = snap._head.files();
+        PathMap<ObjectId> index = snap._index;
+        Map<String, ObjectId> working = hash(index.keySet(), head.keySet());
+        TreeSet<String> modified = new TreeSet<>();
+        TreeSet<String> deleted = new TreeSet<>();
+        for (String path : index.keySet()) {
+            ObjectId id = working.get(path);
+            if (id == null) {
+                if (materialized(path)) {
+                    deleted.add(path);
+                }
+            } else if (!id.equals(index.get(path))) {
+                modified.add(path);
+            }
+        }
+        TreeSet<String> untracked = new TreeSet<>();
+        List<String> files = new ArrayList<>();
+        PathPatterns ignore = PathPatterns.load(new File(_dir, IGNORE_FILE));
+        walk(_dir, "", ignore, ignore.root(), files);
+        for (String path : files) {
+            if (!head.containsKey(path) && !index.containsKey(path)
+                    && !snap._removed.contains(path)) {
+                untracked.add(path);
+            }
+        }
+        return new Status(snap, modified, deleted, untracked);
+    }
+
+    /** Stages the current contents of the working files PATHS. A file
+     * staged for removal is restored to the index instead, and a file
+     * whose contents match the head commit's is unstaged.
+     * @param paths Working files.
+     */
+    public void add(String... paths) {
+        synchronized (_lock) {
+            for (String path : paths) {
+                if (!file(path).isFile()) {
+                    throw new GitletException("File does not exist.");
+                }
+            }
+            Map<String, ObjectId> ids = Arrays.stream(paths).parallel()
+                .distinct()
+                .collect(Collectors.toConcurrentMap(p -> p,
+                    p -> _store.put(Utils.readContents(file(p)))));
+            PathMap<ObjectId> head = _state.head().files();
+            Map<String, ObjectId> staged = _state.staged();
+            for (Map.Entry<String, ObjectId> e : ids.entrySet()) {
+                _state.removedFiles().remove(e.getKey());
+                if (e.getValue().equals(head.get(e.getKey()))) {
+                    staged.remove(e.getKey());
+                } else {
+                    staged.put(e.getKey(), e.getValue());
+                }
+            }
+            save("add " + String.join(" ", paths));
+        }
+    }
+
+    /** Stages the removal of the tracked files PATHS and deletes them from
+     * the working directory. Staged files are unstaged.
+     * @param paths Tracked or staged files.
+     */
+    public void remove(String... paths) {
+        synchronized (_lock) {
+            PathMap<ObjectId> head = _state.head().files();
+            for (String path : paths) {
+                if (!head.containsKey(path)
+                        && !_state.staged().containsKey(path)) {
+                    throw new GitletException("No reason to remove the "
+                                              + "file.");
+                }
+            }
+            for (String path : paths) {
+                _state.staged().remove(path);
+                if (head.containsKey(path)) {
+                    delete(path);
+                    _state.removedFiles().add(path);
+                }
+            }
+            save("rm " + String.join(" ", paths));
+        }
+    }
+
+    /** Commits the staging area with MESSAGE and returns the new commit.
+     * @param message The commit message.
+     */
+    public CommitInfo commit(String message) {
+        synchronized (_lock) {
+            if (message == null || message.isEmpty()) {
+                throw new GitletException("Please enter a commit message.");
+            } else if (_state.staged().isEmpty()
+                       && _state.removedFiles().isEmpty()) {
+                throw new GitletException("No changes added to the "
+                                          + "commit.");
+            }
+            Set<String> changed = new HashSet<>(_state.staged().keySet());
+            changed.addAll(_state.removedFiles());
+            Commit commit = newCommit(message, _state.head(), _state.index(),
+                                      changed);
+            _state.staged().clear();
+            _state.removedFiles().clear();
+            _state.setHead(_state.headName(), commit);
+            save("commit " + message);
+            return new CommitInfo(commit);
+        }
+    }
+
+    /** Creates BRANCH, pointing at the head commit of the current branch.
+     * @param branch Name of the new branch.
+     */
+    public void branch(String branch) {
+        synchronized (_lock) {
+            if (_state.refs().containsKey(branch)) {
+                throw new GitletException("A branch with that name already "
+                                          + "exists.");
+            }
+            _state.refs().put(branch, new Branch(branch, _state.head()));
+            save("branch " + branch);
+        }
+    }
+
+    /** Checks out BRANCH. Only the files that differ between the two head
+     * commits are written or deleted, and the staging area is cleared.
+     * @param branch A branch name.
+     */
+    public void checkout(String branch) {
+        synchronized (_lock) {
+            if (!_state.refs().containsKey(branch)) {
+                throw new GitletException("No such branch exists.");
+            } else if (branch.equals(_state.headName())) {
+                throw new GitletException("No need to checkout the current "
+                                          + "branch.");
+            } else if (checkedOutElsewhere(branch)) {
+                throw new GitletException("That branch is checked out in "
+                                          + "another worktree.");
+            }
+            String current = _state.headName();
+            switchTo(branch, _state.refs().get(branch).commit());
+            release(current);
+            save("checkout " + branch);
+        }
+    }
+
+    /** Overwrites the working file PATH with its version in the head
+     * commit. The staging area is not changed.
+     * @param path A file tracked by the head commit.
+     */
+    public void checkoutFile(String path) {
+        synchronized (_lock) {
+            ObjectId id = _state.head().files().get(path);
+            if (id == null) {
+                throw new GitletException("File does not exist in that "
+                                          + "commit.");
+            }
+            _store.copyTo(id, file(path));
+        }
+    }
+
+    /** Merges BRANCH into the current branch. The merged files are
+     * computed from stored blobs and only the files that change are
+     * written. Without conflicts the merge is committed; with conflicts,
+     * the conflicting files are written with both versions, the rest of
+     * the merge is staged, and nothing is committed.
+     * @param branch The branch merged in.
+     */
+    public MergeResult merge(String branch) {
+        return merge(branch, -1);
+    }
+
+    /** Merges BRANCH into the current branch, as merge(BRANCH) does,
+     * following files that either side renamed with at least THRESHOLD
+     * percent similarity.
+     * @param branch The branch merged in.
+     * @param threshold Least similarity of a rename, in percent, or -1.
+     */
+    MergeResult merge(String branch, int threshold) {
+        synchronized (_lock) {
+            if (!_state.refs().containsKey(branch)) {
+                throw new GitletException("A branch with that name does "
+                                          + "not exist.");
+            } else if (!_state.staged().isEmpty()
+                       || !_state.removedFiles().isEmpty()) {
+                throw new GitletException("You have uncommitted changes.");
+            } else if (branch.equals(_state.headName())) {
+                throw new GitletException("Cannot merge a branch with "
+                                          + "itself.");
+            }
+            String current = _state.headName();
+            Commit head = _state.head();
+            Commit given = _state.refs().get(branch).commit();
+            Commit split = _state.split(current, branch);
+            if (split == null) {
+                throw new GitletException("Given branch has no common "
+                                          + "ancestor with the current "
+                                          + "branch.");
+            } else if (split.sha().equals(given.sha())) {
+                return new MergeResult(MergeResult.Outcome.UP_TO_DATE,
+                                       head, Collections.emptyList());
+            } else if (split.sha().equals(head.sha())) {
+                switchTo(current, given);
+                save("merge " + branch);
+                return new MergeResult(MergeResult.Outcome.FAST_FORWARD,
+                                       given, Collections.emptyList());
+            }
+            Merge merge = new Merge(split.files(), head.files(),
+                                    given.files(), _store, threshold);
+            if (!apply(merge)) {
+                save("merge " + branch);
+                return new MergeResult(MergeResult.Outcome.CONFLICTED, head,
+                                       merge.conflicts());
+            }
+            Commit commit = newCommit("Merged " + current + " with "
+                                      + branch + ".", head, merge.result(),
+                                      merge.changed());
+            _state.staged().clear();
+            _state.removedFiles().clear();
+            _state.setHead(current, commit);
+            save("merge " + branch);
+            return new MergeResult(MergeResult.Outcome.MERGED, commit,
+                                   Collections.emptyList());
+        }
+    }
+
+    /** Writes MERGE, a merge into the head commit, to the working
+     * directory and the staging area. Each path it changes is written or
+     * deleted, and staged unless it conflicts; conflicting files are
+     * written with both versions. Returns true iff nothing conflicts.
+     * Nothing is changed if an untracked file is in the way.
+     * @param merge A merge whose current side is the head commit.
+     */
+    boolean apply(Merge merge) {
+        checkUntracked(_state.head().files(), merge.changed());
+        Set<String> conflicts = new HashSet<>(merge.conflicts());
+        for (String path : merge.changed()) {
+            ObjectId id = merge.result().get(path);
+            if (id == null) {
+                delete(path);
+                _state.removedFiles().add(path);
+            } else {
+                if (conflicts.contains(path) || materialized(path)) {
+                    _store.copyTo(id, file(path));
+                }
+                if (!conflicts.contains(path)) {
+                    _state.staged().put(path, id);
+                }
+            }
+        }
+        return conflicts.isEmpty();
+    }
+
+    /** Makes COMMIT the head of BRANCH and checks it out, writing or
+     * deleting only the files that differ from the current head commit,
+     * and clears the staging area. BRANCH is claimed for this working
+     * directory. Nothing is changed if an untracked file is in the way.
+     * @param branch A branch name.
+     * @param commit The commit BRANCH is to point to.
+     */
+    void switchTo(String branch, Commit commit) {
+        PathMap<ObjectId> from = _state.head().files();
+        PathMap<ObjectId> to = commit.files();
+        SortedSet<String> paths = to.changes(from);
+        checkUntracked(from, paths);
+        if (!branch.equals(_state.headName()) && !claim(branch)) {
+            throw new GitletException("That branch is checked out in "
+                                      + "another worktree.");
+        }
+        for (String path : paths) {
+            ObjectId id = to.get(path);
+            if (id == null) {
+                delete(path);
+            } else if (materialized(path)) {
+                _store.copyTo(id, file(path));
+            }
+        }
+        _state.setHead(branch, commit);
+        _state.staged().clear();
+        _state.removedFiles().clear();
+    }
+
+    /** Throws a GitletException if any of PATHS, which are about to be
+     * written, is a working file that HEAD does not track. */
+    private void checkUntracked(PathMap<ObjectId> head,
+                                Collection<String> paths) {
+        for (String path : paths) {
+            if (!head.containsKey(path) && materialized(path)
+                    && file(path).exists()) {
+                throw new GitletException("There is an untracked file in "
+                        + "the way; delete it or add it first.");
+            }
+        }
+    }
+
+    /** Records and returns a new commit with MESSAGE on top of PARENT,
+     * whose blob map is BLOBS, in which the paths CHANGED may differ from
+     * PARENT's. */
+    private Commit newCommit(String message, Commit parent,
+                             PathMap<ObjectId> blobs,
+                             Collection<String> changed) {
+        Commit commit = _state.newCommit(message, parent, blobs, changed);
+        _commits.put(commit.sha(), commit);
+        return commit;
+    }
+
+    /** Writes the repository, logs any move of HEAD with REASON, and
+     * publishes a new snapshot. If the write fails, the state is read back
+     * from disk, so that the change that failed is forgotten, and the
+     * GitletException is rethrown. The command line's saver instead logs
+     * and saves as the command line does, and the next snapshot is taken
+     * when it is needed. */
+    private void save(String reason) {
+        if (_saver != null) {
+            _saver.run();
+            _snapshot = null;
+            return;
+        }
+        Snapshot old = _snapshot;
+        _state.refs().reason(reason);
+        File glFile = new File(_dir, "gitlet.ser");
+        try {
+            Main.write(_state, glFile);
+        } catch (GitletException excp) {
+            _state = read(glFile);
+            _state.useStore(_store);
+            throw excp;
+        }
+        Snapshot now = capture();
+        if (!now._head.sha().equals(old._head.sha())
+                || !now._branch.equals(old._branch)) {
+            new Reflog(new File(new File(gitletDir(), "logs"), "HEAD"))
+                .append(new Reflog.Entry(old._head.sha(), now._head.sha(),
+                                         System.currentTimeMillis() / 1000,
+                                         reason));
+        }
+        _snapshot = now;
+    }
+
+    /** Returns a snapshot of the current state. */
+    private Snapshot capture() {
+        TreeMap<String, String> branches = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> e
+                 : _state.refs().ids("").entrySet()) {
+            branches.put(e.getKey(), e.getValue().toString());
+        }
+        return new Snapshot(this, _state.headName(), _state.head(),
+                            _state.index(), _state.staged().keySet(),
+                            _state.removedFiles(), branches);
+    }
+
+    /** Returns the ids of the contents of the working files among PATHS
+     * and MORE that exist, hashing them in parallel. */
+    private Map<String, ObjectId> hash(Collection<String> paths,
+                                       Collection<String> more) {
+        Set<String> all = new HashSet<>(paths);
+        all.addAll(more);
+        return all.parallelStream()
+            .filter(p -> file(p).isFile())
+            .collect(Collectors.toConcurrentMap(p -> p,
+                p -> ObjectId.hash(Utils.readContents(file(p)))));
+    }
+
+    /** Adds the plain files below DIR to OUT, named relative to the
+     * working directory with the given PREFIX. Skips the repository's own
+     * metadata and whatever IGNORE matches, without descending into
+     * ignored directories.
+     * @param dir Directory to walk.
+     * @param prefix Relative name of DIR, ending in a slash, or "".
+     * @param ignore The ignore patterns.
+     * @param state Ignore-pattern state of DIR.
+     * @param out Collects the relative file names.
+     */
+    static void walk(File dir, String prefix, PathPatterns ignore,
+                     PathPatterns.State state, Collection<String> out) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            if (name.equals(".gitlet")
+                    || prefix.isEmpty() && name.startsWith("gitlet.ser")) {
+                continue;
+            }
+            boolean isDir = f.isDirectory();
+            PathPatterns.State next = ignore.step(state, name);
+            if (ignore.matches(next, isDir)) {
+                continue;
+            } else if (isDir) {
+                walk(f, prefix + name + "/", ignore, next, out);
+            } else if (f.isFile()) {
+                out.add(prefix + name);
+            }
+        }
+    }
+
+    /** Returns true iff the tracked file PATH belongs in the working
+     * directory under the sparse-checkout patterns.
+     * @param path A path relative to the working directory.
+     */
+    boolean materialized(String path) {
+        return _sparse == null || _sparse.matches(path);
+    }
+
+    /** Returns true iff BRANCH is the current branch of a worktree other
+     * than this one.
+     * @param branch A branch name.
+     */
+    boolean checkedOutElsewhere(String branch) {
+        String owner = Worktree.owner(_gitletDir, branch);
+        if (owner != null && !owner.equals(_worktree)) {
+            return true;
+        }
+        return _worktree != null && branch.equals(_state.mainBranch());
+    }
+
+    /** Claims BRANCH for this worktree if it is a linked worktree. Returns
+     * false if another worktree holds the claim.
+     * @param branch A branch name.
+     */
+    boolean claim(String branch) {
+        return _worktree == null
+            || Worktree.lock(_gitletDir, branch, _worktree);
+    }
+
+    /** Releases this worktree's claim on BRANCH, if it holds one.
+     * @param branch A branch name.
+     */
+    void release(String branch) {
+        if (_worktree != null) {
+            Worktree.unlock(_gitletDir, branch, _worktree);
+        }
+    }
+
+    /** Deletes the working file PATH, unless it is a directory. */
+    private void delete(String path) {
+        File file = file(path);
+        if (!file.isDirectory()) {
+            file.delete();
+        }
+    }
+
+    /** Returns the working file PATH. */
+    private File file(String path) {
+        return new File(_dir, path);
+    }
+
+    /** Returns the .gitlet directory. */
+    private File gitletDir() {
+        return _gitletDir;
+    }
+
+    /** Makes ALGORITHM the hash algorithm of this process, unless a
+     * repository using another one is already open. */
+    private static synchronized void useFormat(HashAlgorithm algorithm) {
+        if (_format != null && _format != algorithm) {
+            throw new GitletException("Repository uses a different hash "
+                    + "algorithm than one already open.");
+        }
+        _format = algorithm;
+        ObjectId.use(algorithm);
+    }
+
+    /** An immutable view of a repository's branches, head commit and
+     * staging area at one moment. */
+    public static final class Snapshot {
+
+        /** A view of REPO on BRANCH, at HEAD, with INDEX as the staging
+         * area, made of the head commit's files, the STAGED files and
+         * without the REMOVED files. BRANCHES are the branch heads. */
+        private Snapshot(Repository repo, String branch, Commit head,
+                         PathMap<ObjectId> index, Collection<String> staged,
+                         Collection<String> removed,
+                         SortedMap<String, String> branches) {
+            _repo = repo;
+            _branch = branch;
+            _head = head;
+            _index = index;
+            _staged = Collections.unmodifiableSortedSet(
+                new TreeSet<>(staged));
+            _removed = Collections.unmodifiableSortedSet(
+                new TreeSet<>(removed));
+            _branches = Collections.unmodifiableSortedMap(branches);
+        }
+
+        /** Returns the name of the current branch. */
+        public String branch() {
+            return _branch;
+        }
+
+        /** Returns the head commit of the current branch. */
+        public CommitInfo head() {
+            return new CommitInfo(_head);
+        }
+
+        /** Returns the id of each branch's head commit, by branch name. */
+        public SortedMap<String, String> branches() {
+            return _branches;
+        }
+
+        /** Returns the files staged for addition. */
+        public SortedSet<String> staged() {
+            return _staged;
+        }
+
+        /** Returns the files staged for removal. */
+        public SortedSet<String> removed() {
+            return _removed;
+        }
+
+        /** Returns the files the next commit would track. */
+        public SortedSet<String> files() {
+            return Collections.unmodifiableSortedSet(
+                new TreeSet<>(_index.keySet()));
+        }
+
+        /** Returns the contents of PATH as the next commit would record
+         * them, or null if it would not track PATH.
+         * @param path A file name.
+         */
+        public byte[] contents(String path) {
+            ObjectId id = _index.get(path);
+            return id == null ? null : _repo._store.get(id);
+        }
+
+        /** Returns the commits from the head commit back to the initial
+         * commit, newest first. */
+        public Iterator<CommitInfo> log() {
+            return new Iterator<CommitInfo>() {
+                @Override
+                public boolean hasNext() {
+                    return _next != null;
+                }
+
+                @Override
+                public CommitInfo next() {
+                    if (_next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Commit commit = _next;
+                    _next = commit.psha() == null ? null
+                        : _repo._commits.get(commit.psha());
+                    return new CommitInfo(commit);
+                }
+
+                /** The commit returned next. */
+                private Commit _next = _head;
+            };
+        }
+
+        /** The repository. */
+        private final Repository _repo;
+
+        /** The current branch. */
+        private final String _branch;
+
+        /** Its head commit. */
+        private final Commit _head;
+
+        /** The staging area as a blob map. */
+        private final PathMap<ObjectId> _index;
+
+        /** Files staged for addition. */
+        private final SortedSet<String> _staged;
+
+        /** Files staged for removal. */
+        private final SortedSet<String> _removed;
+
+        /** Head commit ids by branch name. */
+        private final SortedMap<String, String> _branches;
+    }
+
+    /** A commit, as seen through a Repository. */
+    public static final class CommitInfo {
+
+        /** A view of COMMIT. */
+        private CommitInfo(Commit commit) {
+            _commit = commit;
+        }
+
+        /** Returns the commit id. */
+        public String id() {
+            return _commit.sha().toString();
+        }
+
+        /** Returns the id of the parent commit, or null for the initial
+         * commit. */
+        public String parent() {
+            return _commit.psha() == null ? null
+                : _commit.psha().toString();
+        }
+
+        /** Returns the commit message. */
+        public String message() {
+            return _commit.message();
+        }
+
+        /** Returns the time of the commit, as the log command shows it. */
+        public String time() {
+            return _commit.time();
+        }
+
+        /** Returns the files the commit tracks. */
+        public SortedSet<String> files() {
+            return Collections.unmodifiableSortedSet(
+                new TreeSet<>(_commit.files().keySet()));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CommitInfo
+                && ((CommitInfo) obj)._commit.sha().equals(_commit.sha());
+        }
+
+        @Override
+        public int hashCode() {
+            return _commit.sha().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return id();
+        }
+
+        /** The commit. */
+        private final Commit _commit;
+    }
+
+    /** The working directory compared with a snapshot. */
+    public static final class Status {
+
+        /** The status of SNAPSHOT's working directory, in which the files
+         * MODIFIED and DELETED differ from the staging area and UNTRACKED
+         * are not tracked. */
+        private Status(Snapshot snapshot, SortedSet<String> modified,
+                       SortedSet<String> deleted,
+                       SortedSet<String> untracked) {
+            _snapshot = snapshot;
+            _modified = Collections.unmodifiableSortedSet(modified);
+            _deleted = Collections.unmodifiableSortedSet(deleted);
+            _untracked = Collections.unmodifiableSortedSet(untracked);
+        }
+
+        /** Returns the snapshot compared. */
+        public Snapshot snapshot() {
+            return _snapshot;
+        }
+
+        /** Returns the tracked files whose working contents differ from
+         * the staging area's, and are not staged. */
+        public SortedSet<String> modified() {
+            return _modified;
+        }
+
+        /** Returns the tracked files missing from the working directory. */
+        public SortedSet<String> deleted() {
+            return _deleted;
+        }
+
+        /** Returns the working files that are neither tracked nor staged,
+         * other than those .gitletignore matches. */
+        public SortedSet<String> untracked() {
+            return _untracked;
+        }
+
+        /** Returns true iff the working directory and staging area match
+         * the head commit, apart from untracked files. */
+        public boolean clean() {
+            return _modified.isEmpty() && _deleted.isEmpty()
+                && _snapshot.staged().isEmpty()
+                && _snapshot.removed().isEmpty();
+        }
+
+        /** The snapshot compared. */
+        private final Snapshot _snapshot;
+
+        /** Files with unstaged changes. */
+        private final SortedSet<String> _modified;
+
+        /** Tracked files that are missing. */
+        private final SortedSet<String> _deleted;
+
+        /** Untracked files. */
+        private final SortedSet<String> _untracked;
+    }
+
+    /** What a merge did. */
+    public static final class MergeResult {
+
+        /** The ways a merge can end. */
+        public enum Outcome {
+            /** The given branch was already merged; nothing changed. */
+            UP_TO_DATE,
+            /** The current branch was moved to the given branch's head. */
+            FAST_FORWARD,
+            /** The merge was committed. */
+            MERGED,
+            /** Conflicts were written to the working directory and nothing
+             * was committed. */
+            CONFLICTED
+        }
+
+        /** A merge that ended with OUTCOME at HEAD, with CONFLICTS. */
+        private MergeResult(Outcome outcome, Commit head,
+                            List<String> conflicts) {
+            _outcome = outcome;
+            _head = new CommitInfo(head);
+            _conflicts = Collections.unmodifiableList(
+                new ArrayList<>(conflicts));
+        }
+
+        /** Returns how the merge ended. */
+        public Outcome outcome() {
+            return _outcome;
+        }
+
+        /** Returns the head commit of the current branch after the
+         * merge. */
+        public CommitInfo head() {
+            return _head;
+        }
+
+        /** Returns the conflicting files, in order. */
+        public List<String> conflicts() {
+            return _conflicts;
+        }
+
+        /** How the merge ended. */
+        private final Outcome _outcome;
+
+        /** The head commit afterwards. */
+        private final CommitInfo _head;
+
+        /** Conflicting files. */
+        private final List<String> _conflicts;
+    }
+
+    /** Name of the file of ignore patterns in the working directory. */
+    private static final String IGNORE_FILE = ".gitletignore";
+
+    /** Hash algorithm of the repositories opened in this process. */
+    private static HashAlgorithm _format;
+
+    /** The working directory. */
+    private final File _dir;
+
+    /** The .gitlet directory of the main working directory. */
+    private final File _gitletDir;
+
+    /** The name of the working directory as a linked worktree, or null. */
+    private final String _worktree;
+
+    /** The sparse-checkout patterns, or null if there are none. */
+    private final PathPatterns _sparse;
+
+    /** Saves the state for the command line, or null. */
+    private final Runnable _saver;
+
+    /** The saved state, changed only while holding _lock. */
+    private Main _state;
+
+    /** The blob store. */
+    private final ObjectStore _store;
+
+    /** Every commit, by id. Commits are only added, so readers may look
+     * up parents without locking. */
+    private final Map<ObjectId, Commit> _commits = new ConcurrentHashMap<>();
+
+    /** Held while changing the repository. */
+    private final Object _lock = new Object();
+
+    /** The latest snapshot. */
+    private volatile Snapshot _snapshot;
+}
@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The stack of stashed changes. Each entry is the id of a commit holding
+ *  the working files as they were when stashed, whose parent holds the
+ *  staging area and whose grandparent is the commit that was checked out.
+ *  The ids are kept in a text file, newest first, one per line.
+ *  @author Anh Le & Roberto Romo
+ */
+class Stash {
+
+    /** The stash whose entries are kept in FILE.
+     * @param file The list of entries, which need not exist yet.
+     */
+    Stash(File file) {
+        _file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        String text = new String(Utils.readContents(file),
+                                 StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            ObjectId id = ObjectId.parse(line.trim());
+            if (id != null) {
+                _entries.add(id);
+            }
+        }
+    }
+
+    /** Returns the entries, newest first. */
+    List<ObjectId> entries() {
+        return Collections.unmodifiableList(_entries);
+    }
+
+    /** Returns the number of entry N in REF, which is stash@{N}, or -1 if
+     * REF is malformed or there is no such entry.
+     * @param ref A stash reference.
+     */
+    int index(String ref) {
+        if (!ref.startsWith("stash@{") || !ref.endsWith("}")) {
+            return -1;
+        }
+        try {
+            int n = Integer.parseInt(ref.substring("stash@{".length(),
+                                                   ref.length() - 1));
+            return n >= 0 && n < _entries.size() ? n : -1;
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+    }
+
+    /** Makes ID the newest entry.
+     * @param id The id of a stash commit.
+     */
+    void push(ObjectId id) {
+        _entries.add(0, id);
+    }
+
+    /** Removes and returns entry N.
+     * @param n The number of an entry, 0 for the newest.
+     */
+    ObjectId drop(int n) {
+        return _entries.remove(n);
+    }
+
+    /** Writes the entries to the file, removing it if there are none. */
+    void save() {
+        if (_entries.isEmpty()) {
+            _file.delete();
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (ObjectId id : _entries) {
+            text.append(id).append('\n');
+        }
+        Utils.writeContents(_file,
+                            text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The file listing the entries. */
+    private final File _file;
+
+    /** Entries, newest first. */
+    private final List<ObjectId> _entries = new ArrayList<>();
+}
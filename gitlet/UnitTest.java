@@ -8,6 +8,14 @@ import javax.imageio.IIOException;
 import static org.junit.Assert.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author Anh Le & Roberto Romo
@@ -79,6 +87,282 @@ public class UnitTest {
         remove(new File("cow"));
     }
 
+    /** Tests that PathMap shares structure and ignores insertion order. */
+    @Test
+    public void pathMap() {
+        PathMap<String> m1 = PathMap.empty();
+        PathMap<String> m2 = PathMap.empty();
+        for (int i = 0; i < 1000; i += 1) {
+            m1 = m1.plus("f" + i, "a");
+            m2 = m2.plus("f" + (999 - i), "a");
+        }
+        assertEquals(1000, m1.size());
+        assertEquals(m1, m2);
+        assertEquals(m1.toString(), m2.toString());
+        assertEquals(m1.treeHash(), m2.treeHash());
+        PathMap<String> m3 = m1.plus("f5", "b").minus("f7");
+        assertEquals("a", m1.get("f5"));
+        assertEquals("b", m3.get("f5"));
+        assertFalse(m3.containsKey("f7"));
+        assertEquals(999, m3.size());
+        assertNotEquals(m1.treeHash(), m3.treeHash());
+        assertEquals(m1.treeHash(), m3.plus("f5", "a").plus("f7", "a")
+                     .treeHash());
+        assertSame(m1, m1.plus("f5", "a"));
+        assertSame(m1, m1.minus("g"));
+        String path = PathTable.intern(new String("d/f0"));
+        assertSame(path, PathTable.intern(new String("d/f0")));
+    }
+
+    /** Tests ObjectId conversions and ObjectIdMap lookups. */
+    @Test
+    public void objectIds() {
+        ObjectId id = ObjectId.hash("wug");
+        assertEquals(Utils.sha1("wug"), id.toString());
+        assertEquals(id, ObjectId.parse(id.toString()));
+        assertEquals(id, ObjectId.of(id.bytes()));
+        assertTrue(id.startsWith(id.toString().substring(0, 6)));
+        assertNull(ObjectId.parse("wug"));
+        ObjectIdMap<Integer> map = new ObjectIdMap<>();
+        for (int i = 0; i < 100; i += 1) {
+            map.put(ObjectId.hash("f" + i), i);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            assertEquals((Integer) i, map.remove(ObjectId.hash("f" + i)));
+        }
+        assertEquals(50, map.size());
+        assertEquals((Integer) 51, map.get(ObjectId.hash("f51")));
+        assertNull(map.get(ObjectId.hash("f50")));
+        assertNull(map.get(null));
+    }
+
+    /** Tests that SHA-256 ids round-trip and differ from SHA-1 ids. */
+    @Test
+    public void hashAlgorithms() {
+        ObjectId.use(HashAlgorithm.SHA256);
+        try {
+            ObjectId id = ObjectId.hash("wug");
+            assertEquals(32, id.length());
+            assertEquals(64, id.toString().length());
+            assertEquals(id, ObjectId.parse(id.toString()));
+            assertEquals(id, ObjectId.of(id.bytes()));
+            assertTrue(ObjectId.zero().isZero());
+            assertEquals(32, ObjectId.zero().length());
+        } finally {
+            ObjectId.use(HashAlgorithm.SHA1);
+        }
+        ObjectId sha1 = ObjectId.hash("wug");
+        assertEquals(20, sha1.length());
+        assertNotEquals(sha1, ObjectId.of(HashAlgorithm.SHA256.digest("wug")));
+        assertEquals(HashAlgorithm.SHA256, HashAlgorithm.named("sha256"));
+        assertNull(HashAlgorithm.named("md5"));
+        assertEquals(HashAlgorithm.checksum("wug".getBytes()),
+                     HashAlgorithm.checksum("w".getBytes(),
+                                            "ug".getBytes()));
+    }
+
+    /** Tests gitignore-style pattern matching, with negation, anchoring,
+     * directory-only patterns and ** wildcards. */
+    @Test
+    public void pathPatterns() {
+        PathPatterns p = new PathPatterns(Arrays.asList(
+            "# comment", "*.log", "!keep.log", "build/", "/top.txt",
+            "docs/**/*.tmp", "[ab]?.c"));
+        assertTrue(p.matches("a.log"));
+        assertTrue(p.matches("x/y/a.log"));
+        assertFalse(p.matches("keep.log"));
+        assertTrue(p.matches("build/out.txt"));
+        assertFalse(p.matches("build"));
+        assertTrue(p.matches("top.txt"));
+        assertFalse(p.matches("sub/top.txt"));
+        assertTrue(p.matches("docs/x.tmp"));
+        assertTrue(p.matches("docs/a/b/x.tmp"));
+        assertFalse(p.matches("src/docs/x.tmp"));
+        assertTrue(p.matches("b1.c"));
+        assertFalse(p.matches("c1.c"));
+        PathPatterns.State build = p.step(p.root(), "build");
+        assertTrue(p.matches(build, true));
+        assertFalse(p.matches(build, false));
+    }
+
+    /** Tests that recovery cuts off a journal batch left unfinished. */
+    @Test
+    public void journal() throws IOException {
+        File dir = new File("journal-test");
+        remove(dir);
+        ObjectStore store = new ObjectStore(dir);
+        ObjectId id = store.put("wug".getBytes());
+        store.sync();
+        File journal = new File(dir, "journal");
+        long committed = journal.length();
+        assertTrue(committed > 0);
+        java.nio.file.Files.write(journal.toPath(), new byte[] {'B', 1, 2},
+            java.nio.file.StandardOpenOption.APPEND);
+        new ObjectStore(dir).recover();
+        assertEquals(committed, journal.length());
+        assertEquals("wug", new String(new ObjectStore(dir).get(id)));
+        remove(dir);
+    }
+
+    /** Tests that a reflog keeps its newest entries in bounded segments. */
+    @Test
+    public void reflog() {
+        File dir = new File("reflog-test");
+        remove(dir);
+        Reflog log = new Reflog(dir);
+        ObjectId prev = null;
+        for (int i = 0; i < 5000; i += 1) {
+            ObjectId id = ObjectId.hash("c" + i);
+            log.append(new Reflog.Entry(prev, id, i, "move " + i));
+            prev = id;
+        }
+        assertTrue(dir.list().length <= Reflog.MAX_SEGMENTS);
+        List<Reflog.Entry> latest = log.latest(3);
+        assertEquals(3, latest.size());
+        assertEquals("move 4999", latest.get(0).message());
+        assertEquals(ObjectId.hash("c4998"), latest.get(1).now());
+        assertEquals(ObjectId.hash("c4996"), latest.get(2).old());
+        remove(dir);
+    }
+
+    /** Tests that renames are found by id and by similarity, and that
+     * dissimilar files are not paired. */
+    @Test
+    public void renames() {
+        Map<String, byte[]> before = new HashMap<>();
+        Map<String, byte[]> after = new HashMap<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i += 1) {
+            text.append("line ").append(i).append('\n');
+        }
+        before.put("a", "same\n".getBytes());
+        before.put("b", text.toString().getBytes());
+        before.put("c", "unrelated\n".getBytes());
+        after.put("x/a", "same\n".getBytes());
+        after.put("x/b", (text + "line 40\n").getBytes());
+        after.put("x/c", "other\n".getBytes());
+        PathMap<ObjectId> older = PathMap.empty();
+        PathMap<ObjectId> newer = PathMap.empty();
+        for (Map.Entry<String, byte[]> e : before.entrySet()) {
+            older = older.plus(e.getKey(), ObjectId.hash(e.getValue()));
+        }
+        for (Map.Entry<String, byte[]> e : after.entrySet()) {
+            newer = newer.plus(e.getKey(), ObjectId.hash(e.getValue()));
+        }
+        List<Renames.Rename> found =
+            new Renames(older, newer, newer.changes(older), before::get,
+                        after::get, Renames.DEFAULT_THRESHOLD).renames();
+        assertEquals(2, found.size());
+        assertEquals("a", found.get(0).from());
+        assertEquals("x/a", found.get(0).to());
+        assertEquals(100, found.get(0).score());
+        assertEquals("b", found.get(1).from());
+        assertTrue(found.get(1).score() >= Renames.DEFAULT_THRESHOLD);
+        assertFalse(found.get(1).copy());
+        assertEquals(-1, Renames.threshold("-Mx"));
+        assertEquals(70, Renames.threshold("-M70"));
+    }
+
+    /** Tests the Repository API, with readers running while commits are
+     * made. */
+    @Test
+    public void repository() throws Exception {
+        File dir = new File("repository-test");
+        remove(dir);
+        dir.mkdirs();
+        Repository repo = Repository.init(dir);
+        Utils.writeContents(new File(dir, "a.txt"), "a\n".getBytes());
+        Utils.writeContents(new File(dir, "u.txt"), "u\n".getBytes());
+        repo.add("a.txt");
+        assertEquals(Collections.singleton("a.txt"),
+                     repo.snapshot().staged());
+        Repository.CommitInfo first = repo.commit("commit 1");
+        assertEquals(first, repo.snapshot().head());
+        assertTrue(repo.status().clean());
+        assertEquals(Collections.singleton("u.txt"),
+                     repo.status().untracked());
+        repo.branch("other");
+        Utils.writeContents(new File(dir, "a.txt"), "b\n".getBytes());
+        assertEquals(Collections.singleton("a.txt"),
+                     repo.status().modified());
+        Thread[] readers = new Thread[4];
+        AtomicBoolean bad = new AtomicBoolean();
+        for (int i = 0; i < readers.length; i += 1) {
+            readers[i] = new Thread(() -> {
+                for (int k = 0; k < 200; k += 1) {
+                    Repository.Snapshot snap = repo.snapshot();
+                    int n = 0;
+                    for (Iterator<Repository.CommitInfo> it =
+                             snap.log(); it.hasNext(); it.next()) {
+                        n += 1;
+                    }
+                    if (!snap.head().message().equals("commit " + (n - 1))) {
+                        bad.set(true);
+                    }
+                }
+            });
+            readers[i].start();
+        }
+        for (int i = 2; i <= 20; i += 1) {
+            Utils.writeContents(new File(dir, "a.txt"), ("a" + i).getBytes());
+            repo.add("a.txt");
+            repo.commit("commit " + i);
+        }
+        for (Thread t : readers) {
+            t.join();
+        }
+        assertFalse(bad.get());
+        try {
+            repo.commit("empty");
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("No changes added to the commit.",
+                         excp.getMessage());
+        }
+        repo.checkout("other");
+        assertEquals("a\n", new String(Utils.readContents(
+            new File(dir, "a.txt"))));
+        Utils.writeContents(new File(dir, "b.txt"), "b\n".getBytes());
+        repo.add("b.txt");
+        repo.commit("add b");
+        Repository.MergeResult merge = repo.merge("master");
+        assertEquals(Repository.MergeResult.Outcome.MERGED, merge.outcome());
+        assertEquals("a20", new String(Utils.readContents(
+            new File(dir, "a.txt"))));
+        Repository reopened = Repository.open(dir);
+        assertEquals(merge.head(), reopened.snapshot().head());
+        assertEquals("other", reopened.snapshot().branch());
+        assertEquals(Arrays.asList("master", "other"),
+                     new ArrayList<>(reopened.snapshot()
+                                               .branches().keySet()));
+        File tmp = new File(dir, "gitlet.ser.tmp");
+        tmp.mkdir();
+        Utils.writeContents(new File(tmp, "x"), "x".getBytes());
+        try {
+            reopened.branch("failed");
+            fail();
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().startsWith("Could not save"));
+        }
+        remove(tmp);
+        reopened.branch("failed");
+        assertTrue(reopened.snapshot().branches().containsKey("failed"));
+        File ser = new File(dir, "gitlet.ser");
+        Main state = Main.read(ser);
+        state.refs().put("unrelated", new Branch("unrelated",
+            state.newCommit("another root", null, PathMap.empty(),
+                            Collections.emptySet())));
+        Main.write(state, ser);
+        try {
+            Repository.open(dir).merge("unrelated");
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("Given branch has no common ancestor with the "
+                         + "current branch.", excp.getMessage());
+        }
+        remove(dir);
+    }
+
     /** Delete the files from directory. */
     public void remove(File d) {
         if (d.isDirectory()) {
@@ -3,12 +3,10 @@ package gitlet;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -22,25 +20,13 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
-        }
+        return ObjectId.of(sha1Digest(vals)).toString();
+    }
+
+    /** Returns the raw SHA-1 digest of the concatenation of VALS, which may
+     *  be any mixture of byte arrays and Strings. */
+    static byte[] sha1Digest(Object... vals) {
+        return HashAlgorithm.SHA1.digest(vals);
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -104,6 +90,21 @@ class Utils {
         }
     }
 
+    /** Force FILE, which may be a directory, and everything written to it
+     *  to stable storage.  A directory that cannot be synced, as on some
+     *  platforms, is skipped.  Throws IllegalArgumentException in case of
+     *  problems with a plain file. */
+    static void sync(File file) {
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
     /* DIRECTORIES */
 
     /** Filter out all but plain files. */
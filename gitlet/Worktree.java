@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+
+/** The state private to one working directory of a repository: its path,
+ *  current branch and staging area. The main working directory keeps this
+ *  state in gitlet.ser along with the shared commits and branches; each
+ *  linked worktree keeps it in .gitlet/worktrees/NAME/state of the main
+ *  working directory, and its own .gitlet is a file naming the main
+ *  working directory and NAME.
+ *
+ *  A branch checked out in a linked worktree is claimed by a lock file
+ *  in .gitlet/branch-locks, created atomically, so that no two worktrees
+ *  can check out the same branch.
+ *  @author Anh Le & Roberto Romo
+ */
+class Worktree implements Serializable {
+
+    /** The state of the working directory PATH, on BRANCH, with STAGED
+     * and REMOVED as its staging area.
+     * @param path Absolute path of the working directory.
+     * @param branch Name of the current branch.
+     * @param staged Staged files and the ids of their contents.
+     * @param removed Files staged for removal.
+     */
+    Worktree(String path, String branch, Map<String, ObjectId> staged,
+             Set<String> removed) {
+        _path = path;
+        _branch = branch;
+        _staged = staged;
+        _removed = removed;
+    }
+
+    /** Returns the absolute path of the working directory. */
+    String path() {
+        return _path;
+    }
+
+    /** Returns the name of the current branch. */
+    String branch() {
+        return _branch;
+    }
+
+    /** Returns the staged files and the ids of their contents. */
+    Map<String, ObjectId> staged() {
+        return _staged;
+    }
+
+    /** Returns the files staged for removal. */
+    Set<String> removed() {
+        return _removed;
+    }
+
+    /** Returns the directory holding the state of the linked worktree
+     * NAME of the repository whose metadata is in GITLETDIR.
+     * @param gitletDir The .gitlet directory of the main working directory.
+     * @param name Name of a linked worktree.
+     */
+    static File adminDir(File gitletDir, String name) {
+        return new File(new File(gitletDir, "worktrees"), name);
+    }
+
+    /** Returns the state saved in the worktree directory ADMIN, or null if
+     * there is none.
+     * @param admin A directory returned by adminDir.
+     */
+    static Worktree load(File admin) {
+        File file = new File(admin, "state");
+        if (!file.isFile()) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                 new BufferedInputStream(new FileInputStream(file)))) {
+            return (Worktree) in.readObject();
+        } catch (IOException | ClassNotFoundException excp) {
+            return null;
+        }
+    }
+
+    /** Saves this state in the worktree directory ADMIN, replacing the
+     * previous state atomically and durably.
+     * @param admin A directory returned by adminDir.
+     */
+    void save(File admin) {
+        admin.mkdirs();
+        File file = new File(admin, "state");
+        File tmp = new File(admin, "state.tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp);
+             ObjectOutputStream out = new ObjectOutputStream(
+                 new BufferedOutputStream(stream))) {
+            out.writeObject(this);
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.sync(admin);
+    }
+
+    /** Returns the name of the linked worktree that has BRANCH checked
+     * out, or null if none has.
+     * @param gitletDir The .gitlet directory of the main working directory.
+     * @param branch A branch name.
+     */
+    static String owner(File gitletDir, String branch) {
+        File lock = lockFile(gitletDir, branch);
+        return lock.isFile() ? new String(Utils.readContents(lock),
+                                          StandardCharsets.UTF_8) : null;
+    }
+
+    /** Claims BRANCH for the linked worktree OWNER. Returns false if
+     * another worktree holds the claim.
+     * @param gitletDir The .gitlet directory of the main working directory.
+     * @param branch A branch name.
+     * @param owner Name of a linked worktree.
+     */
+    static boolean lock(File gitletDir, String branch, String owner) {
+        File lock = lockFile(gitletDir, branch);
+        lock.getParentFile().mkdirs();
+        try {
+            Files.write(Files.createFile(lock.toPath()),
+                        owner.getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (FileAlreadyExistsException excp) {
+            return owner.equals(owner(gitletDir, branch));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Releases the claim of the linked worktree OWNER on BRANCH, if it
+     * holds one.
+     * @param gitletDir The .gitlet directory of the main working directory.
+     * @param branch A branch name.
+     * @param owner Name of a linked worktree.
+     */
+    static void unlock(File gitletDir, String branch, String owner) {
+        if (owner.equals(owner(gitletDir, branch))) {
+            lockFile(gitletDir, branch).delete();
+        }
+    }
+
+    /** Returns the lock file for BRANCH. */
+    private static File lockFile(File gitletDir, String branch) {
+        return new File(new File(gitletDir, "branch-locks"),
+                        URLEncoder.encode(branch, StandardCharsets.UTF_8));
+    }
+
+    /** Absolute path of the working directory. */
+    private final String _path;
+
+    /** Name of the current branch. */
+    private final String _branch;
+
+    /** Staged files and the ids of their contents. */
+    private final Map<String, ObjectId> _staged;
+
+    /** Files staged for removal. */
+    private final Set<String> _removed;
+}